@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.client;
+
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Compact binary encoding of the WebSocket messages used by machine clients (i.e., the benchmarker). A client requests
+ * it by connecting with the query parameter <code>protocol=binary</code>.
+ *
+ * A binary frame contains one record: the topic id (1 byte; 0 followed by the length (2 bytes) and the UTF-8 encoded
+ * name for topics without id), the number of payloads (4 bytes) and the payloads, each consisting of its length (4 bytes)
+ * and its UTF-8 encoding. A batch of output lines is therefore sent as a single record. All integers are big-endian.
+ */
+public final class BinaryProtocol {
+
+    public static final String QUERY_PARAMETER = "protocol";
+    public static final String BINARY = "binary";
+
+    // The position in the list is the id of the topic. Only append new topics, never reorder!
+    private static final List<String> TOPICS = Collections.unmodifiableList( Arrays.asList(
+            null,
+            "clientId",
+            "status",
+            "version",
+            "benchmarkerConnected",
+            "numberOfOtherRunningPolyphenyInstances",
+            "logOutput",
+            "startOutput",
+            "stopOutput",
+            "restartOutput",
+            "updateOutput",
+            "polyfierOutput",
+            "currentConfig",
+            "crashed",
+            "processMetrics",
+            "jvmMetrics",
+            "ready" ) );
+
+
+    private BinaryProtocol() {
+        // Utility class
+    }
+
+
+    public static ByteBuffer encode( String topic, List<String> payloads ) {
+        int id = TOPICS.indexOf( topic );
+        byte[] name = id > 0 ? null : topic.getBytes( StandardCharsets.UTF_8 );
+        List<byte[]> encoded = new ArrayList<>( payloads.size() );
+        int size = 1 + (name == null ? 0 : 2 + name.length) + 4;
+        for ( String payload : payloads ) {
+            byte[] bytes = payload.getBytes( StandardCharsets.UTF_8 );
+            encoded.add( bytes );
+            size += 4 + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate( size );
+        if ( name == null ) {
+            buffer.put( (byte) id );
+        } else {
+            buffer.put( (byte) 0 );
+            buffer.putShort( (short) name.length );
+            buffer.put( name );
+        }
+        buffer.putInt( encoded.size() );
+        for ( byte[] bytes : encoded ) {
+            buffer.putInt( bytes.length );
+            buffer.put( bytes );
+        }
+        // Cast for compatibility with Java 8, where ByteBuffer does not override flip()
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+
+    /**
+     * Decodes a frame and passes every payload together with its topic to the consumer.
+     */
+    public static void decode( ByteBuffer frame, BiConsumer<String, String> consumer ) {
+        ByteBuffer buffer = frame.duplicate();
+        int id = buffer.get() & 0xFF;
+        String topic;
+        if ( id == 0 ) {
+            topic = readString( buffer, buffer.getShort() & 0xFFFF );
+        } else if ( id < TOPICS.size() ) {
+            topic = TOPICS.get( id );
+        } else {
+            throw new IllegalArgumentException( "Unknown topic id: " + id );
+        }
+        int count = buffer.getInt();
+        for ( int i = 0; i < count; i++ ) {
+            consumer.accept( topic, readString( buffer, buffer.getInt() ) );
+        }
+    }
+
+
+    private static String readString( ByteBuffer buffer, int length ) {
+        String value;
+        if ( buffer.hasArray() ) {
+            value = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8 );
+            ((Buffer) buffer).position( buffer.position() + length );
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get( bytes );
+            value = new String( bytes, StandardCharsets.UTF_8 );
+        }
+        return value;
+    }
+
+}
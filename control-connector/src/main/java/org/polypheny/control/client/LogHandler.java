@@ -16,6 +16,10 @@
 
 package org.polypheny.control.client;
 
+
+import java.util.Map;
+
+
 public interface LogHandler {
 
     void handleLogMessage( String logOutput );
@@ -28,4 +32,11 @@ public interface LogHandler {
 
     void handleUpdateMessage( String logStr );
 
+    /**
+     * Called when Polypheny-DB has crashed. The map contains the exit code, the action taken by Control (none, restart
+     * or crashLoop), the backoff until the restart (ms) and the last lines of output.
+     */
+    default void handleCrash( Map<String, String> crash ) {
+    }
+
 }
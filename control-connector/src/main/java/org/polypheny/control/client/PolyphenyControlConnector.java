@@ -17,12 +17,23 @@
 package org.polypheny.control.client;
 
 
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
-import java.lang.reflect.Type;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -32,12 +43,24 @@ import kong.unirest.UnirestException;
 import kong.unirest.json.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
 import org.java_websocket.handshake.ServerHandshake;
 
 
 @Slf4j
 public class PolyphenyControlConnector {
 
+    /**
+     * The topics of {@link #subscribeStatusOnly()}.
+     */
+    public static final Set<String> STATUS_ONLY_TOPICS = Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "status", "crashed" ) ) );
+
+    // Maximum time a single request waits for Polypheny-DB to become ready (ms)
+    private static final long READY_POLL_TIMEOUT = 30_000;
+    // Delay between requests which returned before their timeout without Polypheny-DB being ready (ms)
+    private static final long READY_POLL_DELAY = 250;
+
     private final String controlUrl;
     private static int clientId = -1;
     private final ClientData clientData;
@@ -47,10 +70,25 @@ public class PolyphenyControlConnector {
 
     private final LogHandler logHandler;
 
+    // The subscription is re-applied whenever the connector (re-)connects; null means all topics
+    private volatile Set<String> subscribedTopics = null;
+    private volatile String filterLevel = null;
+    private volatile String filterRegex = null;
+
 
     public PolyphenyControlConnector( String controlUrl, ClientData clientData, LogHandler logHandler ) throws URISyntaxException {
+        this( controlUrl, clientData, logHandler, null );
+    }
+
+
+    /**
+     * @param topics The topics to subscribe to (null for all topics, see {@link #setSubscription(Set)}). Unlike a later
+     * subscription, this already applies to the replay of the recent output the server sends when connecting.
+     */
+    public PolyphenyControlConnector( String controlUrl, ClientData clientData, LogHandler logHandler, Set<String> topics ) throws URISyntaxException {
         this.clientData = clientData;
         this.logHandler = logHandler;
+        this.subscribedTopics = topics == null ? null : new HashSet<>( topics );
 
         this.controlUrl = "http://" + controlUrl;
 
@@ -62,7 +100,20 @@ public class PolyphenyControlConnector {
         } );
         httpConnector.authenticate( this.controlUrl + "/", clientData.getUsername(), clientData.getPassword() );
 
-        WebSocket webSocket = new WebSocket( new URI( "ws://" + controlUrl + "/socket/" ) );
+        // Machine clients use the compact binary protocol
+        List<String> parameters = new ArrayList<>();
+        if ( clientData.getClientType() == ClientType.BENCHMARKER ) {
+            parameters.add( BinaryProtocol.QUERY_PARAMETER + "=" + BinaryProtocol.BINARY );
+        }
+        if ( topics != null ) {
+            try {
+                parameters.add( "topics=" + URLEncoder.encode( String.join( ",", topics ), "UTF-8" ) );
+            } catch ( UnsupportedEncodingException e ) {
+                throw new RuntimeException( e );
+            }
+        }
+        String query = parameters.isEmpty() ? "" : "?" + String.join( "&", parameters );
+        WebSocket webSocket = new WebSocket( new URI( "ws://" + controlUrl + "/socket/" + query ) );
         webSocket.connect();
 
         // Check status of connection and reconnect if necessary
@@ -99,6 +150,65 @@ public class PolyphenyControlConnector {
     }
 
 
+    /**
+     * @return Whether Polypheny-DB has been started and is ready to process queries
+     */
+    public boolean isReady() {
+        return isReady( 0 );
+    }
+
+
+    /**
+     * Waits until Polypheny-DB is ready to process queries, e.g., after {@link #startPolypheny()}.
+     *
+     * @return Whether Polypheny-DB is ready; false if the timeout has elapsed before or if Polypheny-DB is not starting
+     * (i.e., it has not been started or has terminated during the startup)
+     */
+    public boolean waitUntilReady( long timeout, TimeUnit unit ) {
+        long deadline = System.currentTimeMillis() + unit.toMillis( timeout );
+        long remaining;
+        while ( (remaining = deadline - System.currentTimeMillis()) > 0 ) {
+            // Wait in steps to stay below the timeout of the HTTP client
+            long waitMillis = Math.min( remaining, READY_POLL_TIMEOUT );
+            long start = System.currentTimeMillis();
+            JsonObject readiness = getReadiness( waitMillis );
+            if ( readiness != null ) {
+                if ( readiness.get( "ready" ).getAsBoolean() ) {
+                    return true;
+                }
+                if ( readiness.has( "state" ) && !readiness.get( "state" ).getAsString().equals( "starting" ) ) {
+                    return false;
+                }
+            }
+            // Do not poll in a tight loop if the request has returned early (e.g., because it failed)
+            if ( System.currentTimeMillis() - start < waitMillis ) {
+                try {
+                    Thread.sleep( Math.min( READY_POLL_DELAY, Math.max( 0, deadline - System.currentTimeMillis() ) ) );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return isReady( 0 );
+    }
+
+
+    private boolean isReady( long waitMillis ) {
+        JsonObject readiness = getReadiness( waitMillis );
+        return readiness != null && readiness.get( "ready" ).getAsBoolean();
+    }
+
+
+    private JsonObject getReadiness( long waitMillis ) {
+        String response = executeGet( "/control/ready?timeout=" + waitMillis );
+        if ( response == null ) {
+            return null;
+        }
+        return JsonParser.parseString( response ).getAsJsonObject();
+    }
+
+
     public void purgePolyphenyFolder() {
         setClientType(); // Set the client type (again) - does not hurt and makes sure its set
         try {
@@ -159,6 +269,61 @@ public class PolyphenyControlConnector {
     }
 
 
+    /**
+     * Subscribes to exactly the given topics (e.g., "status", "logOutput"). All other topics are not sent to this client
+     * anymore. Passing null subscribes to all topics.
+     */
+    public void setSubscription( Set<String> topics ) {
+        subscribedTopics = topics == null ? null : new HashSet<>( topics );
+        applySubscription();
+    }
+
+
+    /**
+     * Only receive status updates and crash reports and skip the output of Polypheny-DB entirely. To also skip the replay
+     * of the recent output when connecting, pass {@link #STATUS_ONLY_TOPICS} to the constructor instead.
+     */
+    public void subscribeStatusOnly() {
+        setSubscription( STATUS_ONLY_TOPICS );
+    }
+
+
+    /**
+     * Filters the output topics on the server side.
+     *
+     * @param level The minimum log level (e.g., "WARN") or null for all levels
+     * @param regex A regular expression lines must contain a match of or null for all lines
+     */
+    public void setFilter( String level, String regex ) {
+        filterLevel = level;
+        filterRegex = regex;
+        applySubscription();
+    }
+
+
+    void applySubscription() {
+        if ( clientId < 0 ) {
+            // Applied as soon as we got a client id
+            return;
+        }
+        try {
+            Set<String> topics = subscribedTopics;
+            httpConnector.post(
+                    controlUrl + "/client/subscribe",
+                    request -> request.field( "clientId", clientId )
+                            .field( "topics", topics == null ? "*" : String.join( ",", topics ) )
+                            .field( "replace", "true" ) );
+            httpConnector.post(
+                    controlUrl + "/client/filter",
+                    request -> request.field( "clientId", clientId )
+                            .field( "level", filterLevel == null ? "" : filterLevel )
+                            .field( "regex", filterRegex == null ? "" : filterRegex ) );
+        } catch ( UnirestException e ) {
+            log.error( "Error while setting subscription", e );
+        }
+    }
+
+
     public String getConfig() {
         return executeGet( "/config/get" );
     }
@@ -188,11 +353,9 @@ public class PolyphenyControlConnector {
 
     private class WebSocket extends WebSocketClient {
 
-        private final Gson gson = new Gson();
-
-
         public WebSocket( URI serverUri ) {
-            super( serverUri );
+            // Offer permessage-deflate compression, the server enables it if supported
+            super( serverUri, new Draft_6455( new PerMessageDeflateExtension() ) );
         }
 
 
@@ -203,49 +366,79 @@ public class PolyphenyControlConnector {
 
         @Override
         public void onMessage( String message ) {
-            if ( message.startsWith( "{\"version\":{" ) ) {
-                return;
-            }
-            Type type = new TypeToken<Map<String, String>>() {
-            }.getType();
-            Map<String, String> data = gson.fromJson( message, type );
-
-            if ( data.containsKey( "clientId" ) ) {
-                clientId = Integer.parseInt( data.get( "clientId" ) );
-                setClientType();
-            }
-            if ( data.containsKey( "logOutput" ) ) {
-                if ( logHandler != null ) {
-                    logHandler.handleLogMessage( data.get( "logOutput" ) );
-                }
-            }
-            if ( data.containsKey( "startOutput" ) ) {
-                if ( logHandler != null ) {
-                    logHandler.handleStartupMessage( data.get( "startOutput" ) );
-                }
-            }
-            if ( data.containsKey( "stopOutput" ) ) {
-                if ( logHandler != null ) {
-                    logHandler.handleShutdownMessage( data.get( "stopOutput" ) );
-                }
-            }
-            if ( data.containsKey( "restartOutput" ) ) {
-                if ( logHandler != null ) {
-                    logHandler.handleRestartMessage( data.get( "restartOutput" ) );
+            JsonObject data = JsonParser.parseString( message ).getAsJsonObject();
+            for ( Map.Entry<String, JsonElement> entry : data.entrySet() ) {
+                JsonElement value = entry.getValue();
+                if ( value.isJsonArray() ) {
+                    // Batched frame containing one element per line
+                    for ( JsonElement line : value.getAsJsonArray() ) {
+                        handleMessage( entry.getKey(), line.getAsString() );
+                    }
+                } else if ( value.isJsonPrimitive() ) {
+                    handleMessage( entry.getKey(), value.getAsString() );
+                } else if ( entry.getKey().equals( "crashed" ) ) {
+                    // Same representation as in the binary protocol
+                    handleMessage( entry.getKey(), value.toString() );
                 }
+                // Other objects (e.g., the version information) are not handled by the connector
             }
-            if ( data.containsKey( "updateOutput" ) ) {
-                String logStr = data.get( "updateOutput" );
-                //noinspection StatementWithEmptyBody
-                if ( logStr.startsWith( "Task :" ) && (logStr.endsWith( "started" ) || logStr.endsWith( "skipped" ) || logStr.endsWith( "UP-TO-DATE" ) || logStr.endsWith( "SUCCESS" )) ) {
-                    // Ignore this to avoid cluttering the log. These are gradle log massage where everything is fine.
-                } else {
+        }
+
+
+        @Override
+        public void onMessage( ByteBuffer bytes ) {
+            BinaryProtocol.decode( bytes, this::handleMessage );
+        }
+
+
+        private void handleMessage( String topic, String message ) {
+            switch ( topic ) {
+                case "clientId":
+                    clientId = Integer.parseInt( message );
+                    setClientType();
+                    if ( subscribedTopics != null || filterLevel != null || filterRegex != null ) {
+                        applySubscription();
+                    }
+                    break;
+                case "logOutput":
                     if ( logHandler != null ) {
-                        logHandler.handleUpdateMessage( logStr );
+                        logHandler.handleLogMessage( message );
                     }
-                }
+                    break;
+                case "startOutput":
+                    if ( logHandler != null ) {
+                        logHandler.handleStartupMessage( message );
+                    }
+                    break;
+                case "stopOutput":
+                    if ( logHandler != null ) {
+                        logHandler.handleShutdownMessage( message );
+                    }
+                    break;
+                case "restartOutput":
+                    if ( logHandler != null ) {
+                        logHandler.handleRestartMessage( message );
+                    }
+                    break;
+                case "updateOutput":
+                    //noinspection StatementWithEmptyBody
+                    if ( message.startsWith( "Task :" ) && (message.endsWith( "started" ) || message.endsWith( "skipped" ) || message.endsWith( "UP-TO-DATE" ) || message.endsWith( "SUCCESS" )) ) {
+                        // Ignore this to avoid cluttering the log. These are gradle log massage where everything is fine.
+                    } else {
+                        if ( logHandler != null ) {
+                            logHandler.handleUpdateMessage( message );
+                        }
+                    }
+                    break;
+                case "crashed":
+                    if ( logHandler != null ) {
+                        logHandler.handleCrash( gson.fromJson( message, new TypeToken<Map<String, String>>() {
+                        }.getType() ) );
+                    }
+                    break;
+                default:
+                    break;
             }
-
         }
 
 
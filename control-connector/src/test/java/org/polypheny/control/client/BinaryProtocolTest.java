@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.client;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class BinaryProtocolTest {
+
+    @Test
+    public void roundTripKnownTopic() {
+        List<String> lines = Arrays.asList( "first line", "", "second line" );
+        ByteBuffer frame = BinaryProtocol.encode( "logOutput", lines );
+
+        // Known topics are encoded by their id
+        Assertions.assertEquals( 6, frame.get( 0 ) );
+
+        List<String> topics = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        BinaryProtocol.decode( frame, ( topic, payload ) -> {
+            topics.add( topic );
+            payloads.add( payload );
+        } );
+        Assertions.assertEquals( Collections.nCopies( 3, "logOutput" ), topics );
+        Assertions.assertEquals( lines, payloads );
+    }
+
+
+    @Test
+    public void roundTripUnknownTopic() {
+        ByteBuffer frame = BinaryProtocol.encode( "someNewTopic", Collections.singletonList( "payload" ) );
+        Assertions.assertEquals( 0, frame.get( 0 ) );
+
+        List<String> decoded = new ArrayList<>();
+        BinaryProtocol.decode( frame, ( topic, payload ) -> decoded.add( topic + ":" + payload ) );
+        Assertions.assertEquals( Collections.singletonList( "someNewTopic:payload" ), decoded );
+    }
+
+
+    @Test
+    public void roundTripMultiByteCharacters() {
+        List<String> lines = Arrays.asList( "Gr\u00fc\u00dfe", "\u65e5\u672c\u8a9e", "\ud83d\ude00" );
+        List<String> decoded = new ArrayList<>();
+        BinaryProtocol.decode( BinaryProtocol.encode( "status", lines ), ( topic, payload ) -> decoded.add( payload ) );
+        Assertions.assertEquals( lines, decoded );
+    }
+
+
+    @Test
+    public void roundTripEmptyBatch() {
+        List<String> decoded = new ArrayList<>();
+        BinaryProtocol.decode( BinaryProtocol.encode( "startOutput", Collections.emptyList() ), ( topic, payload ) -> decoded.add( payload ) );
+        Assertions.assertTrue( decoded.isEmpty() );
+    }
+
+
+    @Test
+    public void decodeDoesNotConsumeFrame() {
+        ByteBuffer frame = BinaryProtocol.encode( "version", Collections.singletonList( "{}" ) );
+        int remaining = frame.remaining();
+        BinaryProtocol.decode( frame, ( topic, payload ) -> {
+        } );
+        BinaryProtocol.decode( frame, ( topic, payload ) -> {
+        } );
+        Assertions.assertEquals( remaining, frame.remaining() );
+    }
+
+
+    @Test
+    public void decodeDirectBuffer() {
+        ByteBuffer heap = BinaryProtocol.encode( "crashed", Collections.singletonList( "exit code 1" ) );
+        ByteBuffer direct = ByteBuffer.allocateDirect( heap.remaining() );
+        direct.put( heap.duplicate() );
+        direct.flip();
+
+        List<String> decoded = new ArrayList<>();
+        BinaryProtocol.decode( direct, ( topic, payload ) -> decoded.add( topic + ":" + payload ) );
+        Assertions.assertEquals( Collections.singletonList( "crashed:exit code 1" ), decoded );
+    }
+
+
+    @Test
+    public void decodeUnknownTopicId() {
+        ByteBuffer frame = ByteBuffer.allocate( 5 );
+        frame.put( (byte) 200 ).putInt( 0 ).flip();
+        Assertions.assertThrows( IllegalArgumentException.class, () -> BinaryProtocol.decode( frame, ( topic, payload ) -> {
+        } ) );
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.typesafe.config.Config;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Writes chunks of output to a file on a dedicated thread. If the writer falls behind, the queue fills up and
+ * {@link #write(byte[])} blocks. This way no output is lost and the pressure is propagated back to the process.
+ *
+ * The file is rotated as soon as it exceeds the configured size or age: the current segment is renamed to
+ * <code>&lt;file&gt;.&lt;n&gt;</code> (the higher n, the newer) and a new file is started under the original name. Rotation
+ * only happens at a line boundary, so every line is contained in exactly one segment. If the file cannot be renamed (e.g.,
+ * because it is locked), writing continues in the current file and the rotation is retried a minute later. Closed
+ * segments are handed to {@link LogRetention}. Every file (and segment) gets a {@link LogIndex} which is written along
+ * with it.
+ */
+@Slf4j
+class AsyncLogWriter {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final byte[] EOF = new byte[0];
+    private static final long ROTATION_RETRY_DELAY = TimeUnit.MINUTES.toMillis( 1 );
+
+    private static final long maxSize;
+    private static final long maxAge;
+
+    private final File file;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+    private final Thread thread;
+
+    private OutputStream out;
+    private LogIndex.Writer index;
+    private long segmentSize;
+    private long segmentStart;
+    private int segmentNumber = 0;
+    private long rotationRetryTime = 0; // After a failed rotation, the next attempt is not made before this time
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        maxSize = config.getBytes( "pcrtl.logs.rotation.maxsize" );
+        maxAge = config.getDuration( "pcrtl.logs.rotation.maxage", TimeUnit.MILLISECONDS );
+    }
+
+
+    AsyncLogWriter( File file ) {
+        this.file = file;
+        this.thread = new Thread( this::run, "AsyncLogWriter-" + file.getName() );
+        this.thread.setDaemon( true );
+        this.thread.start();
+    }
+
+
+    /**
+     * Enqueues a chunk. The chunk must not be modified afterward.
+     */
+    void write( byte[] chunk ) {
+        try {
+            queue.put( chunk );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Writes all outstanding chunks and closes the file.
+     */
+    void close() {
+        write( EOF );
+    }
+
+
+    private void run() {
+        LogRetention.activate( file );
+        try {
+            open( false );
+            while ( true ) {
+                byte[] chunk = queue.take();
+                if ( chunk == EOF ) {
+                    return;
+                }
+                writeChunk( chunk );
+                if ( queue.isEmpty() ) {
+                    // Only flush if we have caught up, this keeps the number of syscalls low under load
+                    out.flush();
+                    if ( index != null ) {
+                        index.flush();
+                    }
+                }
+            }
+        } catch ( IOException e ) {
+            log.error( "Exception while writing to log file {}", file, e );
+            // Keep draining the queue to not block the producer
+            drainAfterError();
+        } catch ( InterruptedException e ) {
+            log.warn( "Interrupted while writing to log file {}", file );
+        } finally {
+            closeQuietly();
+            LogRetention.deactivate( file );
+        }
+    }
+
+
+    private void writeChunk( byte[] chunk ) throws IOException {
+        if ( needsRotation() ) {
+            // Complete the current line, then continue in a new segment
+            int lineEnd = indexOf( chunk, (byte) '\n' );
+            if ( lineEnd >= 0 ) {
+                write( chunk, 0, lineEnd + 1 );
+                rotate();
+                write( chunk, lineEnd + 1, chunk.length - lineEnd - 1 );
+                return;
+            }
+        }
+        write( chunk, 0, chunk.length );
+    }
+
+
+    private void write( byte[] chunk, int off, int len ) throws IOException {
+        out.write( chunk, off, len );
+        if ( index != null ) {
+            index.append( chunk, off, len );
+        }
+        segmentSize += len;
+    }
+
+
+    private boolean needsRotation() {
+        if ( rotationRetryTime > 0 && System.currentTimeMillis() < rotationRetryTime ) {
+            return false;
+        }
+        return (maxSize > 0 && segmentSize >= maxSize) || (maxAge > 0 && segmentSize > 0 && System.currentTimeMillis() - segmentStart >= maxAge);
+    }
+
+
+    private void rotate() throws IOException {
+        out.close();
+        File segment;
+        do {
+            segment = new File( file.getPath() + "." + ++segmentNumber );
+        } while ( segment.exists() );
+        try {
+            Files.move( file.toPath(), segment.toPath() );
+        } catch ( IOException e ) {
+            // Continue writing to the current file. The file stays above the limits, so back off instead of retrying
+            // with every chunk (e.g., while the file is locked on Windows).
+            segmentNumber--;
+            rotationRetryTime = System.currentTimeMillis() + ROTATION_RETRY_DELAY;
+            log.warn( "Unable to rotate log file {}, retrying in {} s: {}", file, TimeUnit.MILLISECONDS.toSeconds( ROTATION_RETRY_DELAY ), e.toString() );
+            open( true );
+            return;
+        }
+        rotationRetryTime = 0;
+        closeIndex();
+        try {
+            Files.move( LogIndex.indexFileOf( file ).toPath(), LogIndex.indexFileOf( segment ).toPath() );
+        } catch ( IOException e ) {
+            log.warn( "Unable to move index of log file {}", file, e );
+        }
+        open( false );
+        log.debug( "Rotated log file {} to {}", file.getName(), segment.getName() );
+        LogRetention.segmentClosed( segment );
+    }
+
+
+    private void open( boolean append ) throws IOException {
+        out = new BufferedOutputStream( new FileOutputStream( file, append ), 64 * 1024 );
+        if ( !append ) {
+            try {
+                index = new LogIndex.Writer( file );
+            } catch ( IOException e ) {
+                log.warn( "Unable to create index of log file {}", file, e );
+                index = null;
+            }
+        }
+        segmentSize = append ? file.length() : 0;
+        segmentStart = System.currentTimeMillis();
+    }
+
+
+    private void closeQuietly() {
+        if ( out != null ) {
+            try {
+                out.close();
+            } catch ( IOException e ) {
+                log.warn( "Exception while closing log file {}", file, e );
+            }
+        }
+        closeIndex();
+    }
+
+
+    private void closeIndex() {
+        if ( index != null ) {
+            try {
+                index.close();
+            } catch ( IOException e ) {
+                // The missing part is rebuilt when the index is loaded
+                log.warn( "Exception while writing index of log file {}", file, e );
+            }
+            index = null;
+        }
+    }
+
+
+    private static int indexOf( byte[] chunk, byte b ) {
+        for ( int i = 0; i < chunk.length; i++ ) {
+            if ( chunk[i] == b ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private void drainAfterError() {
+        try {
+            while ( queue.take() != EOF ) {
+                // discard
+            }
+        } catch ( InterruptedException e ) {
+            // ignore
+        }
+    }
+
+}
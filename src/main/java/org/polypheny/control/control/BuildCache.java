@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.gradle.tooling.BuildLauncher;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+import org.polypheny.control.httpinterface.ClientCommunicationStream;
+
+
+/**
+ * Manages the Gradle build cache used for building Polypheny-DB and Polypheny-UI. The cache directory is located outside
+ * of the build folder, so that it survives cleaning it, and is configured by an init script generated by Control. If
+ * enabled, the configuration cache is kept outside of the build folder as well. The outcome of the tasks is counted to
+ * report the hit rate of an update, after which the least recently used entries are deleted if the cache exceeds its
+ * maximum size.
+ */
+@Slf4j
+class BuildCache {
+
+    private static final String INIT_SCRIPT_NAME = "control-init.gradle";
+
+    private static final boolean enabled;
+    private static final File cacheDir;
+    private static final long maxSize;
+    private static final boolean configurationCache;
+    private static final File projectCacheDir;
+
+    private static final LongAdder fromCache = new LongAdder();
+    private static final LongAdder upToDate = new LongAdder();
+    private static final LongAdder executed = new LongAdder();
+    private static final LongAdder skipped = new LongAdder();
+
+    private static final Metrics.Counter cacheHits = Metrics.counter(
+            "pcrtl_gradle_tasks_total", "Number of Gradle tasks run by updates by their outcome", "outcome", "fromCache" );
+    private static final Metrics.Counter cacheMisses = Metrics.counter(
+            "pcrtl_gradle_tasks_total", "Number of Gradle tasks run by updates by their outcome", "outcome", "executed" );
+
+    private static File initScript = null;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        enabled = config.getBoolean( "pcrtl.gradle.cache.enable" );
+        cacheDir = new File( config.getString( "pcrtl.gradle.cache.dir" ) );
+        maxSize = config.getBytes( "pcrtl.gradle.cache.maxsize" );
+        configurationCache = config.getBoolean( "pcrtl.gradle.configurationcache" );
+        projectCacheDir = new File( config.getString( "pcrtl.gradle.projectcachedir" ) );
+    }
+
+
+    /**
+     * Adds the arguments enabling the caches and a listener counting the outcome of the tasks to a build of the given
+     * project.
+     */
+    static void configure( BuildLauncher buildLauncher, File projectDir, List<String> arguments ) {
+        List<String> args = new ArrayList<>( arguments );
+        if ( enabled ) {
+            args.add( "--init-script" );
+            args.add( getInitScript().getAbsolutePath() );
+            args.add( "--build-cache" );
+        }
+        if ( configurationCache ) {
+            args.add( "--configuration-cache" );
+            args.add( "--project-cache-dir" );
+            args.add( new File( projectCacheDir, projectDir.getName() ).getAbsolutePath() );
+        }
+        buildLauncher.withArguments( args );
+        buildLauncher.addProgressListener( event -> {
+            if ( event instanceof TaskFinishEvent ) {
+                count( ((TaskFinishEvent) event).getResult() );
+            }
+        }, OperationType.TASK );
+    }
+
+
+    private static void count( TaskOperationResult result ) {
+        if ( result instanceof TaskSuccessResult ) {
+            TaskSuccessResult success = (TaskSuccessResult) result;
+            if ( success.isFromCache() ) {
+                fromCache.increment();
+                cacheHits.inc();
+            } else if ( success.isUpToDate() ) {
+                upToDate.increment();
+            } else {
+                executed.increment();
+                cacheMisses.inc();
+            }
+        } else if ( result instanceof TaskSkippedResult ) {
+            skipped.increment();
+        }
+    }
+
+
+    // (Re)writes the init script configuring the local build cache. It is written once per run of Control.
+    private static synchronized File getInitScript() {
+        if ( initScript == null ) {
+            File script = new File( cacheDir.getParentFile(), INIT_SCRIPT_NAME );
+            String content = "// Generated by Polypheny Control, changes are overwritten\n"
+                    + "gradle.settingsEvaluated { settings ->\n"
+                    + "    settings.buildCache {\n"
+                    + "        local {\n"
+                    + "            enabled = true\n"
+                    + "            directory = new File( '" + cacheDir.getAbsolutePath().replace( '\\', '/' ) + "' )\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "}\n";
+            try {
+                Files.createDirectories( cacheDir.toPath() );
+                Files.write( script.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+            } catch ( IOException e ) {
+                throw new RuntimeException( "Unable to write the Gradle init script " + script.getAbsolutePath(), e );
+            }
+            initScript = script;
+        }
+        return initScript;
+    }
+
+
+    /**
+     * Resets the counted outcomes of the tasks. Called at the beginning of an update.
+     */
+    static void reset() {
+        fromCache.reset();
+        upToDate.reset();
+        executed.reset();
+        skipped.reset();
+    }
+
+
+    /**
+     * Reports the outcome of the tasks since the last reset as well as the size of the build cache, and deletes the least
+     * recently used entries if the cache exceeds its maximum size. Called at the end of an update.
+     */
+    static void report( ClientCommunicationStream clientCommunicationStream ) {
+        long hits = fromCache.sum();
+        long misses = executed.sum();
+        if ( hits + misses + upToDate.sum() == 0 ) {
+            return;
+        }
+        String message = String.format( Locale.ROOT, "> Gradle tasks: %d from cache, %d up-to-date, %d executed, %d skipped (cache hit rate: %d %%)",
+                hits, upToDate.sum(), misses, skipped.sum(), hits + misses == 0 ? 0 : Math.round( 100.0 * hits / (hits + misses) ) );
+        log.info( message );
+        if ( clientCommunicationStream != null ) {
+            clientCommunicationStream.send( message );
+        }
+        if ( enabled ) {
+            long size = trim();
+            message = String.format( Locale.ROOT, "> Gradle build cache: %.1f MiB%s", size / (1024.0 * 1024),
+                    maxSize > 0 ? String.format( Locale.ROOT, " of %.1f MiB", maxSize / (1024.0 * 1024) ) : "" );
+            log.info( message );
+            if ( clientCommunicationStream != null ) {
+                clientCommunicationStream.send( message );
+            }
+        }
+    }
+
+
+    // Deletes the least recently used cache entries until the cache is within its maximum size. Gradle updates the
+    // modification time of an entry whenever it is used. Returns the remaining size.
+    private static long trim() {
+        File[] entries = cacheDir.listFiles( ( dir, name ) -> !name.endsWith( ".lock" ) && !name.endsWith( ".properties" ) );
+        if ( entries == null ) {
+            return 0;
+        }
+        long total = Arrays.stream( entries ).mapToLong( File::length ).sum();
+        if ( maxSize <= 0 || total <= maxSize ) {
+            return total;
+        }
+        Arrays.sort( entries, Comparator.comparingLong( File::lastModified ) );
+        int deleted = 0;
+        for ( File entry : entries ) {
+            if ( total <= maxSize ) {
+                break;
+            }
+            long length = entry.length();
+            if ( entry.isFile() && entry.delete() ) {
+                total -= length;
+                deleted++;
+            }
+        }
+        log.info( "Deleted {} entries from the Gradle build cache to stay within its maximum size", deleted );
+        return total;
+    }
+
+}
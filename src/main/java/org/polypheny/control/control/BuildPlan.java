@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.GradleTask;
+
+
+/**
+ * The Gradle tasks run for building the runnable jar of Polypheny-DB. The "minimal" plan runs only the tasks required for
+ * the shadow jar of the dbms module and the plugins it bundles, in a single invocation. The "full" plan builds the whole
+ * project and then the shadow jar again to include the plugins. It is kept for branches on which the minimal plan does
+ * not work.
+ */
+enum BuildPlan {
+    MINIMAL,
+    FULL;
+
+    static final String JAR_TASK = "dbms:shadowJar";
+    static final String[] ARGUMENTS = { "-x", "test", "-x", "licensee" };
+
+
+    static BuildPlan get( String name ) {
+        try {
+            return valueOf( name.toUpperCase( Locale.ROOT ) );
+        } catch ( IllegalArgumentException e ) {
+            throw new RuntimeException( "Unknown build plan: " + name );
+        }
+    }
+
+
+    /**
+     * Returns the tasks of the minimal plan: the given plugin tasks of all projects (so that the plugins exist when the
+     * shadow jar is assembled) followed by the shadow jar. Returns an empty list if the project has none of the plugin
+     * tasks, as the minimal plan would then produce a jar without plugins.
+     */
+    static List<String> getMinimalTasks( File projectDir, List<String> pluginTasks ) {
+        List<String> tasks = new ArrayList<>();
+        collectTasks( GradleSessions.get( projectDir ).getModel( GradleProject.class ), pluginTasks, tasks );
+        if ( tasks.isEmpty() ) {
+            return tasks;
+        }
+        tasks.add( JAR_TASK );
+        return tasks;
+    }
+
+
+    /**
+     * Returns the tasks compiling the main classes of all projects except for the given ones (i.e., the projects bundling
+     * Polypheny-UI).
+     */
+    static List<String> getPrecompileTasks( File projectDir, List<String> excludedProjects ) {
+        List<String> tasks = new ArrayList<>();
+        collectTasks( GradleSessions.get( projectDir ).getModel( GradleProject.class ), List.of( "classes" ), tasks );
+        tasks.removeIf( task -> excludedProjects.stream().anyMatch( project -> task.startsWith( ":" + project + ":" ) ) );
+        return tasks;
+    }
+
+
+    private static void collectTasks( GradleProject project, List<String> names, List<String> tasks ) {
+        for ( GradleTask task : project.getTasks() ) {
+            if ( names.contains( task.getName() ) ) {
+                tasks.add( task.getPath() );
+            }
+        }
+        for ( GradleProject child : project.getChildren() ) {
+            collectTasks( child, names, tasks );
+        }
+    }
+
+}
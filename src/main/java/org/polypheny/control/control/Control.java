@@ -33,7 +33,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import lombok.NonNull;
-import org.apache.commons.lang3.SystemUtils;
 import org.polypheny.control.httpinterface.ClientCommunicationStream;
 
 
@@ -48,7 +47,7 @@ public class Control {
 
 
     public synchronized void setConfig( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -95,7 +94,7 @@ public class Control {
 
 
     public void start( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -104,7 +103,7 @@ public class Control {
 
 
     public void stop( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -113,7 +112,7 @@ public class Control {
 
 
     public void restart( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -122,7 +121,7 @@ public class Control {
 
 
     public void update( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -131,7 +130,7 @@ public class Control {
 
 
     public void purgePolyphenyFolder( Context ctx ) {
-        if ( ServiceManager.polyfierMode ) {
+        if ( ServiceManager.isPolyfierMode() ) {
             getClientCommunicationStream( ctx, "Running in Polyfier mode, all commands are ignored!" );
             return;
         }
@@ -165,11 +164,7 @@ public class Control {
 
 
     public int getNumberOfOtherRunningPolyphenyInstances() {
-        if ( !SystemUtils.IS_OS_WINDOWS ) {
-            return ServiceManager.getPidOfOtherRunningPolyphenyInstances().size();
-        } else {
-            return -1;
-        }
+        return ServiceManager.getNumberOfOtherRunningPolyphenyInstances();
     }
 
 
@@ -191,10 +186,10 @@ public class Control {
     public void getAvailablePdbBranches( Context ctx ) {
         Config configuration = ConfigManager.getConfig();
         File pdbbuilddir = new File( configuration.getString( "pcrtl.pdbbuilddir" ) );
-        if ( !pdbbuilddir.exists() ) {
+        if ( !pdbbuilddir.exists() && GitSync.getMode() == GitSync.Mode.FULL ) {
             ServiceManager.clonePdbRepository( null, configuration );
         }
-        List<String> list = ServiceManager.getAvailableBranches( pdbbuilddir );
+        List<String> list = ServiceManager.getAvailableBranches( pdbbuilddir, configuration.getString( "pcrtl.pdbms.repo" ) );
         ctx.result( gson.toJson( list ) );
     }
 
@@ -202,10 +197,10 @@ public class Control {
     public void getAvailablePuiBranches( Context ctx ) {
         Config configuration = ConfigManager.getConfig();
         File puiBuildDir = new File( configuration.getString( "pcrtl.puibuilddir" ) );
-        if ( !puiBuildDir.exists() ) {
+        if ( !puiBuildDir.exists() && GitSync.getMode() == GitSync.Mode.FULL ) {
             ServiceManager.clonePuiRepository( null, configuration );
         }
-        List<String> list = ServiceManager.getAvailableBranches( puiBuildDir );
+        List<String> list = ServiceManager.getAvailableBranches( puiBuildDir, configuration.getString( "pcrtl.ui.repo" ) );
         ctx.result( gson.toJson( list ) );
     }
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.RefSpec;
+
+
+/**
+ * Clones and fetches the repositories of Polypheny-DB and Polypheny-UI according to the configured clone mode:
+ * <ul>
+ * <li>"full": All branches with their complete history (pulls merge the remote branch).</li>
+ * <li>"singlebranch": Only the configured branch with its complete history.</li>
+ * <li>"shallow": Only the configured branch, limited to the configured number of most recent commits.</li>
+ * </ul>
+ * In the latter two modes, the configured branch is fetched explicitly (so that switching the branch works) and pulls
+ * reset the working copy to the fetched commit, since the build folders never contain local changes. Partial (blobless)
+ * clones are not supported by JGit.
+ */
+class GitSync {
+
+    enum Mode {
+        FULL,
+        SINGLEBRANCH,
+        SHALLOW
+    }
+
+
+    private static final Mode mode;
+    private static final int depth;
+
+
+    static {
+        String modeStr = ConfigManager.getConfig().getString( "pcrtl.git.clonemode" );
+        try {
+            mode = Mode.valueOf( modeStr.toUpperCase( Locale.ROOT ) );
+        } catch ( IllegalArgumentException e ) {
+            throw new RuntimeException( "Unknown clone mode: " + modeStr );
+        }
+        depth = ConfigManager.getConfig().getInt( "pcrtl.git.depth" );
+    }
+
+
+    static Mode getMode() {
+        return mode;
+    }
+
+
+    static Git cloneRepository( String uri, File dir, String branch ) throws GitAPIException {
+        if ( mode == Mode.FULL ) {
+            return Git.cloneRepository()
+                    .setURI( uri )
+                    .setDirectory( dir )
+                    .setBranch( "master" )
+                    .call();
+        }
+        CloneCommand clone = Git.cloneRepository()
+                .setURI( uri )
+                .setDirectory( dir )
+                .setBranch( branch )
+                .setCloneAllBranches( false )
+                .setBranchesToClone( List.of( "refs/heads/" + branch ) );
+        if ( mode == Mode.SHALLOW ) {
+            clone.setDepth( depth );
+        }
+        return clone.call();
+    }
+
+
+    /**
+     * Fetches the remote state of the given branch (all branches in the full mode).
+     */
+    static void fetch( Git git, String branch ) throws GitAPIException {
+        if ( mode == Mode.FULL ) {
+            git.fetch().call();
+            return;
+        }
+        FetchCommand fetch = git.fetch()
+                .setRefSpecs( new RefSpec( "+refs/heads/" + branch + ":refs/remotes/origin/" + branch ) );
+        if ( mode == Mode.SHALLOW ) {
+            fetch.setDepth( depth );
+        }
+        fetch.call();
+    }
+
+
+    /**
+     * Prepares the pull of a branch: outside the full mode, the branch is fetched so that it exists as a remote branch even
+     * if it has not been cloned. In the full mode, this is done by the pull itself.
+     */
+    static void prepare( Git git, String branch ) throws GitAPIException {
+        if ( mode != Mode.FULL ) {
+            fetch( git, branch );
+        }
+    }
+
+
+    /**
+     * Updates the checked out branch to the state of its remote branch.
+     */
+    static void pull( Git git, String branch ) throws GitAPIException {
+        if ( mode == Mode.FULL ) {
+            git.pull().call();
+        } else {
+            git.reset().setMode( ResetType.HARD ).setRef( "refs/remotes/origin/" + branch ).call();
+        }
+    }
+
+
+    /**
+     * Lists the branches of a remote repository without cloning it.
+     */
+    static List<String> listRemoteBranches( String uri ) throws GitAPIException {
+        Collection<Ref> refs = Git.lsRemoteRepository().setRemote( uri ).setHeads( true ).call();
+        List<String> branches = new ArrayList<>();
+        for ( Ref ref : refs ) {
+            branches.add( ref.getName().replace( "refs/heads/", "" ) );
+        }
+        return branches;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+
+
+/**
+ * Keeps one connection to the Gradle tooling API per project directory, so that all builds of an update (and of
+ * subsequent updates) share it instead of connecting for every task. Connections which have not been used for the idle
+ * timeout are closed, but never while an update is running. An idle timeout of 0 closes them after every update.
+ */
+@Slf4j
+public class GradleSessions {
+
+    private static final Map<File, Session> sessions = new ConcurrentHashMap<>();
+    private static final long idleTimeout;
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "GradleSessionEvictor" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private static final Metrics.Counter connectionsOpened = Metrics.counter(
+            "pcrtl_gradle_connections_opened_total", "Number of connections opened to the Gradle tooling API" );
+    private static final Metrics.Counter connectionsReused = Metrics.counter(
+            "pcrtl_gradle_connections_reused_total", "Number of builds which reused an open connection to the Gradle tooling API" );
+
+
+    static {
+        idleTimeout = ConfigManager.getConfig().getDuration( "pcrtl.gradle.connection.idletimeout", TimeUnit.MILLISECONDS );
+        Metrics.gauge( "pcrtl_gradle_connections", "Number of open connections to the Gradle tooling API", () -> sessions.size() );
+        if ( idleTimeout > 0 ) {
+            long interval = Math.max( 1000, idleTimeout / 4 );
+            evictor.scheduleWithFixedDelay( GradleSessions::evictIdle, interval, interval, TimeUnit.MILLISECONDS );
+        }
+    }
+
+
+    /**
+     * Returns the connection to the Gradle project in the given directory, opening it if necessary.
+     */
+    static synchronized ProjectConnection get( File projectDir ) {
+        File key = projectDir.getAbsoluteFile();
+        Session session = sessions.get( key );
+        if ( session == null ) {
+            session = sessions.computeIfAbsent( key, dir -> {
+                log.debug( "Connecting to the Gradle project in {}", dir );
+                connectionsOpened.inc();
+                return new Session( GradleConnector.newConnector().forProjectDirectory( dir ).connect() );
+            } );
+        } else {
+            connectionsReused.inc();
+        }
+        session.lastUsed = System.nanoTime();
+        return session.connection;
+    }
+
+
+    /**
+     * Called at the end of an update. Closes all connections if they are not kept open beyond an update.
+     */
+    static void release() {
+        if ( idleTimeout <= 0 ) {
+            closeAll();
+        }
+    }
+
+
+    /**
+     * Closes the connection to the Gradle project in the given directory, e.g., before the directory is deleted.
+     */
+    static void close( File projectDir ) {
+        Session session = sessions.remove( projectDir.getAbsoluteFile() );
+        if ( session != null ) {
+            session.close();
+        }
+    }
+
+
+    /**
+     * Closes all connections, e.g., before the build directory is deleted.
+     */
+    static void closeAll() {
+        for ( File dir : sessions.keySet() ) {
+            close( dir );
+        }
+    }
+
+
+    private static synchronized void evictIdle() {
+        if ( ServiceManager.isCurrentlyUpdating() ) {
+            return;
+        }
+        long now = System.nanoTime();
+        Iterator<Map.Entry<File, Session>> it = sessions.entrySet().iterator();
+        while ( it.hasNext() ) {
+            Map.Entry<File, Session> entry = it.next();
+            if ( TimeUnit.NANOSECONDS.toMillis( now - entry.getValue().lastUsed ) >= idleTimeout ) {
+                it.remove();
+                log.debug( "Closing the idle connection to the Gradle project in {}", entry.getKey() );
+                entry.getValue().close();
+            }
+        }
+    }
+
+
+    private static class Session {
+
+        private final ProjectConnection connection;
+        private volatile long lastUsed = System.nanoTime();
+
+
+        Session( ProjectConnection connection ) {
+            this.connection = connection;
+        }
+
+
+        void close() {
+            try {
+                connection.close();
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while closing the connection to Gradle", e );
+            }
+        }
+
+    }
+
+}
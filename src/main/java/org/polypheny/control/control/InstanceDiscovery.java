@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Discovers the Polypheny-DB instances running on this host using {@link ProcessHandle#allProcesses()}. A process is
+ * recognized by the main class of Polypheny-DB in its command line, which is read from <code>/proc/&lt;pid&gt;/cmdline</code>
+ * where available. A process is only examined again if it has executed another program in the meantime. The result is
+ * kept as a snapshot which is refreshed in the background; the termination of a known instance is detected immediately.
+ * Listeners are notified about instances which appeared or disappeared.
+ */
+@Slf4j
+public class InstanceDiscovery {
+
+    private static final Path PROC = Paths.get( "/proc" );
+
+    private static final List<Consumer<Event>> listeners = new CopyOnWriteArrayList<>();
+    private static final Set<Long> known = new HashSet<>(); // Processes classified as instances
+    private static final Map<Long, String> rejected = new HashMap<>(); // Other processes and the name of their executable
+    private static final ScheduledExecutorService scanner = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "InstanceDiscovery" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private static volatile Set<Long> instances = null;
+    private static boolean started = false;
+
+
+    /**
+     * @return The PIDs of the running Polypheny-DB instances (including the one managed by Control).
+     */
+    public static Set<Long> getInstances() {
+        Set<Long> snapshot = instances;
+        if ( snapshot == null ) {
+            scan();
+            snapshot = instances;
+        }
+        return snapshot;
+    }
+
+
+    public static void addListener( Consumer<Event> listener ) {
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Starts refreshing the snapshot in the configured interval.
+     */
+    public static synchronized void start() {
+        if ( started ) {
+            return;
+        }
+        started = true;
+        long interval = ConfigManager.getConfig().getDuration( "pcrtl.discovery.interval", TimeUnit.MILLISECONDS );
+        scanner.scheduleWithFixedDelay( InstanceDiscovery::scan, 0, interval, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Refreshes the snapshot immediately, e.g., after Control has spawned an instance.
+     */
+    static void refresh() {
+        scanner.execute( InstanceDiscovery::scan );
+    }
+
+
+    private static synchronized void scan() {
+        String mainClass = ConfigManager.getConfig().getString( "pcrtl.pdbms.mainclass" );
+        long self = ProcessHandle.current().pid();
+        Set<Long> alive = new HashSet<>();
+        Set<Long> found = new HashSet<>();
+        ProcessHandle.allProcesses().forEach( handle -> {
+            long pid = handle.pid();
+            if ( pid == self ) {
+                return;
+            }
+            alive.add( pid );
+            if ( known.contains( pid ) ) {
+                found.add( pid );
+                return;
+            }
+            // A process is examined again if it has executed another program (e.g., a launcher which executes java)
+            String executable = getExecutable( handle );
+            if ( executable.equals( rejected.get( pid ) ) ) {
+                return;
+            }
+            if ( isInstance( handle, mainClass ) ) {
+                known.add( pid );
+                rejected.remove( pid );
+                found.add( pid );
+            } else {
+                rejected.put( pid, executable );
+            }
+        } );
+        // Forget terminated processes, their PIDs might be reused
+        known.retainAll( alive );
+        rejected.keySet().retainAll( alive );
+        update( found );
+    }
+
+
+    private static synchronized void update( Set<Long> found ) {
+        Set<Long> previous = instances == null ? Collections.emptySet() : instances;
+        instances = Collections.unmodifiableSet( found );
+        for ( long pid : found ) {
+            if ( !previous.contains( pid ) ) {
+                log.info( "Discovered running Polypheny-DB instance with PID {}", pid );
+                ProcessHandle.of( pid ).ifPresent( handle -> handle.onExit().thenRun( () -> disappeared( pid ) ) );
+                publish( new Event( Event.Type.APPEARED, pid ) );
+            }
+        }
+        for ( long pid : previous ) {
+            if ( !found.contains( pid ) ) {
+                log.info( "Polypheny-DB instance with PID {} has terminated", pid );
+                publish( new Event( Event.Type.DISAPPEARED, pid ) );
+            }
+        }
+    }
+
+
+    private static synchronized void disappeared( long pid ) {
+        if ( instances != null && instances.contains( pid ) ) {
+            Set<Long> found = new HashSet<>( instances );
+            found.remove( pid );
+            known.remove( pid );
+            update( found );
+        }
+    }
+
+
+    // The name of the executable changes whenever the process executes another program
+    private static String getExecutable( ProcessHandle handle ) {
+        Path comm = PROC.resolve( Long.toString( handle.pid() ) ).resolve( "comm" );
+        if ( Files.isReadable( comm ) ) {
+            try {
+                return new String( Files.readAllBytes( comm ), StandardCharsets.UTF_8 );
+            } catch ( IOException e ) {
+                // The process has terminated in the meantime
+                return "";
+            }
+        }
+        return handle.info().command().orElse( "" );
+    }
+
+
+    private static boolean isInstance( ProcessHandle handle, String mainClass ) {
+        Path cmdline = PROC.resolve( Long.toString( handle.pid() ) ).resolve( "cmdline" );
+        if ( Files.isReadable( cmdline ) ) {
+            try {
+                // The arguments are separated by NUL characters
+                return new String( Files.readAllBytes( cmdline ), StandardCharsets.UTF_8 ).contains( mainClass );
+            } catch ( IOException e ) {
+                // The process has terminated in the meantime
+                return false;
+            }
+        }
+        return handle.info().commandLine().map( commandLine -> commandLine.contains( mainClass ) ).orElse( false );
+    }
+
+
+    private static void publish( Event event ) {
+        for ( Consumer<Event> listener : listeners ) {
+            try {
+                listener.accept( event );
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while publishing instance event", e );
+            }
+        }
+    }
+
+
+    @Getter
+    public static class Event {
+
+        public enum Type {
+            APPEARED, DISAPPEARED
+        }
+
+
+        private final Type type;
+        private final long pid;
+
+
+        Event( Type type, long pid ) {
+            this.type = type;
+            this.pid = pid;
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.sun.tools.attach.VirtualMachine;
+import com.typesafe.config.Config;
+import io.javalin.http.Context;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Collects the JVM telemetry of the Polypheny-DB instance managed by Control over JMX: heap and non-heap usage, the number
+ * and accumulated time of the collections per garbage collector, threads, class loading and JIT compilation time.
+ * Control connects to the JMX port if it is exposed by the debug options (<code>pcrtl.java.debug.*</code>). Otherwise,
+ * it attaches to the process and starts its local management agent. The samples are kept in an in-memory time series.
+ */
+@Slf4j
+public class JvmTelemetry {
+
+    private static final String PORT_OPTION = "-Dcom.sun.management.jmxremote.port=";
+
+    private static final String[] FIELDS = {
+            "timestamp", "pid", "heapUsed", "heapCommitted", "heapMax", "nonHeapUsed", "nonHeapCommitted",
+            "threads", "daemonThreads", "peakThreads", "loadedClasses", "totalLoadedClasses", "unloadedClasses",
+            "compilationTime" };
+
+    private static final long interval;
+    private static final int capacity;
+    private static final List<Consumer<Map<String, String>>> listeners = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService collector = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "JvmTelemetry" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private static volatile SampleBuffer samples;
+    private static Connection connection = null;
+    private static boolean started = false;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        interval = config.getDuration( "pcrtl.jmx.interval", TimeUnit.MILLISECONDS );
+        capacity = Math.max( config.getInt( "pcrtl.jmx.capacity" ), 1 );
+        samples = new SampleBuffer( FIELDS, capacity );
+    }
+
+
+    public static void addListener( Consumer<Map<String, String>> listener ) {
+        listeners.add( listener );
+    }
+
+
+    public static synchronized void start() {
+        if ( started || interval <= 0 ) {
+            return;
+        }
+        started = true;
+        collector.scheduleWithFixedDelay( JvmTelemetry::collect, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+
+    private static void collect() {
+        int pid = ServiceManager.getPolyphenyDbPid();
+        if ( connection != null && connection.pid != pid ) {
+            connection.close();
+            connection = null;
+        }
+        if ( pid <= 0 ) {
+            return;
+        }
+        try {
+            if ( connection == null ) {
+                connection = new Connection( pid );
+                if ( !Arrays.equals( connection.fields, samples.getFields() ) ) {
+                    // Different garbage collectors than the previous instance
+                    samples = new SampleBuffer( connection.fields, capacity );
+                }
+                log.info( "Connected to JMX of Polypheny-DB (PID {})", pid );
+            }
+            long[] sample = connection.sample();
+            samples.add( sample );
+            if ( !listeners.isEmpty() ) {
+                Map<String, String> map = samples.toMap( sample );
+                listeners.forEach( listener -> listener.accept( map ) );
+            }
+        } catch ( Exception e ) {
+            // E.g., the JVM is still starting or has terminated in the meantime. Try again in the next interval.
+            log.debug( "Exception while collecting JVM telemetry of Polypheny-DB", e );
+            if ( connection != null ) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
+
+    private static JMXServiceURL getServiceUrl( int pid ) throws Exception {
+        Config config = ConfigManager.getConfig();
+        if ( config.getBoolean( "pcrtl.java.debug.expose" ) ) {
+            for ( String option : config.getStringList( "pcrtl.java.debug.options" ) ) {
+                if ( option.startsWith( PORT_OPTION ) ) {
+                    return new JMXServiceURL( "service:jmx:rmi:///jndi/rmi://localhost:" + option.substring( PORT_OPTION.length() ) + "/jmxrmi" );
+                }
+            }
+        }
+        VirtualMachine vm = VirtualMachine.attach( Integer.toString( pid ) );
+        try {
+            return new JMXServiceURL( vm.startLocalManagementAgent() );
+        } finally {
+            vm.detach();
+        }
+    }
+
+
+    /**
+     * Returns the collected samples, the oldest first. Besides the fixed fields, there are the fields
+     * gc.&lt;collector&gt;.count and gc.&lt;collector&gt;.time (ms) per garbage collector. Parameters: since (optional;
+     * only samples taken after this timestamp in milliseconds)
+     */
+    public static void getSamples( Context ctx ) {
+        samples.respond( ctx, interval );
+    }
+
+
+    private static class Connection {
+
+        private final int pid;
+        private final JMXConnector connector;
+        private final MemoryMXBean memory;
+        private final ThreadMXBean threads;
+        private final ClassLoadingMXBean classLoading;
+        private final CompilationMXBean compilation;
+        private final List<GarbageCollectorMXBean> collectors;
+        private final String[] fields;
+
+
+        Connection( int pid ) throws Exception {
+            this.pid = pid;
+            this.connector = JMXConnectorFactory.connect( getServiceUrl( pid ) );
+            try {
+                MBeanServerConnection server = connector.getMBeanServerConnection();
+                memory = ManagementFactory.newPlatformMXBeanProxy( server, ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class );
+                threads = ManagementFactory.newPlatformMXBeanProxy( server, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class );
+                classLoading = ManagementFactory.newPlatformMXBeanProxy( server, ManagementFactory.CLASS_LOADING_MXBEAN_NAME, ClassLoadingMXBean.class );
+                compilation = ManagementFactory.newPlatformMXBeanProxy( server, ManagementFactory.COMPILATION_MXBEAN_NAME, CompilationMXBean.class );
+                collectors = ManagementFactory.getPlatformMXBeans( server, GarbageCollectorMXBean.class );
+            } catch ( IOException | RuntimeException e ) {
+                connector.close();
+                throw e;
+            }
+            List<String> names = new ArrayList<>( Arrays.asList( FIELDS ) );
+            for ( GarbageCollectorMXBean collector : collectors ) {
+                String name = collector.getName().replace( ' ', '_' );
+                names.add( "gc." + name + ".count" );
+                names.add( "gc." + name + ".time" );
+            }
+            fields = names.toArray( new String[0] );
+        }
+
+
+        long[] sample() {
+            long[] sample = new long[fields.length];
+            sample[0] = System.currentTimeMillis();
+            sample[1] = pid;
+            MemoryUsage heap = memory.getHeapMemoryUsage();
+            sample[2] = heap.getUsed();
+            sample[3] = heap.getCommitted();
+            sample[4] = heap.getMax();
+            MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+            sample[5] = nonHeap.getUsed();
+            sample[6] = nonHeap.getCommitted();
+            sample[7] = threads.getThreadCount();
+            sample[8] = threads.getDaemonThreadCount();
+            sample[9] = threads.getPeakThreadCount();
+            sample[10] = classLoading.getLoadedClassCount();
+            sample[11] = classLoading.getTotalLoadedClassCount();
+            sample[12] = classLoading.getUnloadedClassCount();
+            sample[13] = compilation.isCompilationTimeMonitoringSupported() ? compilation.getTotalCompilationTime() : -1;
+            int i = FIELDS.length;
+            for ( GarbageCollectorMXBean collector : collectors ) {
+                sample[i++] = collector.getCollectionCount();
+                sample[i++] = collector.getCollectionTime();
+            }
+            return sample;
+        }
+
+
+        void close() {
+            try {
+                connector.close();
+            } catch ( IOException e ) {
+                // Ignore, the process has probably terminated
+            }
+        }
+
+    }
+
+}
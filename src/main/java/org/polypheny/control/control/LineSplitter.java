@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+
+/**
+ * Splits a stream of UTF-8 encoded chunks into lines. Incomplete lines are kept until the rest of the line arrives.
+ * Not thread-safe.
+ */
+class LineSplitter {
+
+    private final Consumer<String> consumer;
+    private byte[] lineBuffer = new byte[1024];
+    private int lineLength = 0;
+
+
+    LineSplitter( Consumer<String> consumer ) {
+        this.consumer = consumer;
+    }
+
+
+    void feed( ByteBuffer buffer ) {
+        while ( buffer.hasRemaining() ) {
+            append( buffer.get() );
+        }
+    }
+
+
+    void feed( byte[] bytes, int offset, int length ) {
+        for ( int i = offset; i < offset + length; i++ ) {
+            append( bytes[i] );
+        }
+    }
+
+
+    private void append( byte b ) {
+        if ( b == '\n' ) {
+            emit();
+        } else {
+            if ( lineLength == lineBuffer.length ) {
+                lineBuffer = Arrays.copyOf( lineBuffer, lineBuffer.length * 2 );
+            }
+            lineBuffer[lineLength++] = b;
+        }
+    }
+
+
+    /**
+     * Emits the incomplete last line, if there is one. Used when the end of the stream has been reached.
+     */
+    void flush() {
+        if ( lineLength > 0 ) {
+            emit();
+        }
+    }
+
+
+    /**
+     * Discards the incomplete last line, e.g., because the underlying file has been truncated.
+     */
+    void reset() {
+        lineLength = 0;
+    }
+
+
+    private void emit() {
+        int length = lineLength;
+        if ( length > 0 && lineBuffer[length - 1] == '\r' ) {
+            length--;
+        }
+        lineLength = 0;
+        consumer.accept( new String( lineBuffer, 0, length, StandardCharsets.UTF_8 ) );
+    }
+
+}
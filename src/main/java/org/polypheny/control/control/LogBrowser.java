@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.google.gson.Gson;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+
+
+/**
+ * HTTP interface for browsing and searching the log files in the logs directory. Uncompressed files are read through
+ * their {@link LogIndex} using memory-mapped reads, compressed segments are read sequentially.
+ */
+@Slf4j
+public class LogBrowser {
+
+    private static final Gson gson = new Gson();
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10000;
+    private static final int DEFAULT_SEARCH_LIMIT = 1000;
+    private static final int MAX_SEARCH_LIMIT = 100000;
+    private static final int PREFIX_LENGTH = 128;
+
+
+    /**
+     * Lists the log files, the newest first.
+     */
+    public static void list( Context ctx ) {
+        File[] files = LogRetention.listLogFiles( getLogsDir() );
+        List<Map<String, Object>> list = new ArrayList<>();
+        if ( files != null ) {
+            Arrays.sort( files, Comparator.comparingLong( File::lastModified ).reversed() );
+            for ( File file : files ) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put( "name", file.getName() );
+                entry.put( "size", file.length() );
+                entry.put( "lastModified", file.lastModified() );
+                entry.put( "compressed", isCompressed( file ) );
+                entry.put( "indexed", LogIndex.indexFileOf( file ).exists() );
+                list.add( entry );
+            }
+        }
+        ctx.result( gson.toJson( list ) );
+    }
+
+
+    /**
+     * Returns a page of lines. Parameters: file, line (first line, at least 0, default 0) or time (epoch millis; starts at
+     * the first index block written at or after this time; for compressed segments only if their index has been kept),
+     * count (at least 1, default 100)
+     */
+    public static void page( Context ctx ) throws IOException {
+        File file = getFile( ctx );
+        if ( file == null ) {
+            return;
+        }
+        long firstLine = getLong( ctx, "line", 0 );
+        if ( firstLine < 0 ) {
+            throw new BadRequestResponse( "Invalid value for line: " + firstLine );
+        }
+        long requestedCount = getLong( ctx, "count", DEFAULT_PAGE_SIZE );
+        if ( requestedCount < 1 ) {
+            throw new BadRequestResponse( "Invalid value for count: " + requestedCount );
+        }
+        int count = (int) Math.min( requestedCount, MAX_PAGE_SIZE );
+        String time = ctx.queryParam( "time" );
+
+        List<String> lines = new ArrayList<>( Math.min( count, DEFAULT_PAGE_SIZE ) );
+        long totalLines = -1;
+        if ( isCompressed( file ) ) {
+            if ( time != null ) {
+                // Use the index kept from before the compression
+                LogIndex index = LogIndex.loadPersisted( file );
+                if ( index.getBlocks().isEmpty() ) {
+                    throw new BadRequestResponse( "Paging by time is not supported for compressed files without index: " + file.getName() );
+                }
+                int block = index.findTime( getLong( ctx, "time", 0 ) );
+                firstLine = block < index.getBlocks().size() ? index.getBlocks().get( block ).getStartLine() : index.getLineCount();
+            }
+            try ( BufferedReader reader = openCompressed( file ) ) {
+                String line;
+                long lineNumber = 0;
+                while ( lines.size() < count && (line = reader.readLine()) != null ) {
+                    if ( lineNumber++ >= firstLine ) {
+                        lines.add( line );
+                    }
+                }
+            }
+        } else {
+            LogIndex index = LogIndex.load( file );
+            totalLines = index.getLineCount();
+            int block = time != null ? index.findTime( getLong( ctx, "time", 0 ) ) : index.findLine( firstLine );
+            if ( block >= 0 && block < index.getBlocks().size() ) {
+                LogIndex.Block start = index.getBlocks().get( block );
+                if ( time != null ) {
+                    firstLine = start.getStartLine();
+                }
+                final long from = firstLine;
+                try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+                    MappedLogReader.scan( channel, start.getStartOffset(), channel.size(), start.getStartLine(), true, ( lineNumber, lineStart, lineEnd, window, position, length ) -> {
+                        if ( lines.size() >= count ) {
+                            return false;
+                        }
+                        if ( lineNumber >= from ) {
+                            lines.add( MappedLogReader.decode( window, position, length ) );
+                        }
+                        return lines.size() < count;
+                    } );
+                }
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put( "file", file.getName() );
+        result.put( "firstLine", firstLine );
+        result.put( "totalLines", totalLines );
+        result.put( "lines", lines );
+        ctx.result( gson.toJson( result ) );
+    }
+
+
+    /**
+     * Streams the matching lines as JSON objects (one per line) with the line number and the text. Parameters: file,
+     * regex (optional), level (minimum level, optional), from and to (epoch millis, optional; the time resolution is
+     * one index block, lines of compressed segments compressed before their index has been kept are not filtered by
+     * time), limit (default 1000)
+     */
+    public static void search( Context ctx ) throws IOException {
+        File file = getFile( ctx );
+        if ( file == null ) {
+            return;
+        }
+        Pattern pattern = null;
+        String regex = ctx.queryParam( "regex" );
+        if ( regex != null && !regex.isEmpty() ) {
+            try {
+                pattern = Pattern.compile( regex );
+            } catch ( PatternSyntaxException e ) {
+                ctx.status( 400 ).result( "Invalid regular expression: " + e.getMessage() );
+                return;
+            }
+        }
+        Level minLevel = null;
+        String levelStr = ctx.queryParam( "level" );
+        if ( levelStr != null && !levelStr.isEmpty() ) {
+            try {
+                minLevel = Level.valueOf( levelStr.toUpperCase( Locale.ROOT ) );
+            } catch ( IllegalArgumentException e ) {
+                ctx.status( 400 ).result( "Unknown log level: " + levelStr );
+                return;
+            }
+        }
+        long from = getLong( ctx, "from", Long.MIN_VALUE );
+        long to = getLong( ctx, "to", Long.MAX_VALUE );
+        long limit = Math.min( getLong( ctx, "limit", DEFAULT_SEARCH_LIMIT ), MAX_SEARCH_LIMIT );
+
+        ctx.contentType( "application/x-ndjson" );
+        try ( Writer writer = new BufferedWriter( new OutputStreamWriter( ctx.res().getOutputStream(), StandardCharsets.UTF_8 ) ) ) {
+            LineFilter filter = new LineFilter( pattern, minLevel );
+            if ( isCompressed( file ) ) {
+                searchCompressed( file, filter, from, to, limit, writer );
+            } else {
+                searchIndexed( file, filter, from, to, limit, writer );
+            }
+        }
+    }
+
+
+    private static void searchIndexed( File file, LineFilter filter, long from, long to, long limit, Writer writer ) throws IOException {
+        LogIndex index = LogIndex.load( file );
+        int levelMask = filter.minLevel == null ? -1 : LogIndex.levelMaskAtLeast( filter.minLevel );
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        long[] found = { 0 };
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            List<LogIndex.Block> blocks = index.getBlocks();
+            int i = 0;
+            while ( i < blocks.size() && found[0] < limit ) {
+                // Skip the blocks which cannot contain matches and scan consecutive candidates at once
+                if ( !isCandidate( blocks.get( i ), levelMask, from, to ) ) {
+                    i++;
+                    continue;
+                }
+                LogIndex.Block first = blocks.get( i );
+                LogIndex.Block last = first;
+                while ( i + 1 < blocks.size() && isCandidate( blocks.get( i + 1 ), levelMask, from, to ) ) {
+                    last = blocks.get( ++i );
+                }
+                i++;
+                MappedLogReader.scan( channel, first.getStartOffset(), last.getEndOffset(), first.getStartLine(), true, ( lineNumber, lineStart, lineEnd, window, position, length ) -> {
+                    if ( filter.minLevel != null ) {
+                        int prefixLength = MappedLogReader.prefix( window, position, length, prefix );
+                        if ( !filter.matchesLevel( LogLevels.parse( prefix, 0, prefixLength ) ) ) {
+                            return true;
+                        }
+                    }
+                    String line = MappedLogReader.decode( window, position, length );
+                    if ( filter.matchesText( line ) ) {
+                        writeMatch( writer, lineNumber, line );
+                        found[0]++;
+                    }
+                    return found[0] < limit;
+                } );
+            }
+        }
+    }
+
+
+    // The time bounds are applied using the blocks of the index kept from before the compression. Lines not covered by it
+    // are not filtered by time.
+    private static void searchCompressed( File file, LineFilter filter, long from, long to, long limit, Writer writer ) throws IOException {
+        List<LogIndex.Block> blocks = from == Long.MIN_VALUE && to == Long.MAX_VALUE
+                ? List.of()
+                : LogIndex.loadPersisted( file ).getBlocks();
+        int blockIndex = 0;
+        long found = 0;
+        try ( BufferedReader reader = openCompressed( file ) ) {
+            String line;
+            long lineNumber = 0;
+            while ( found < limit && (line = reader.readLine()) != null ) {
+                while ( blockIndex < blocks.size() && lineNumber >= blocks.get( blockIndex ).getEndLine() ) {
+                    blockIndex++;
+                }
+                if ( blockIndex < blocks.size() ) {
+                    LogIndex.Block block = blocks.get( blockIndex );
+                    if ( block.getFirstTime() != LogIndex.UNKNOWN_TIME && block.getFirstTime() > to ) {
+                        // All following lines have been written later
+                        break;
+                    }
+                    if ( !block.overlaps( from, to ) ) {
+                        lineNumber++;
+                        continue;
+                    }
+                }
+                if ( filter.matchesLevel( LogLevels.parse( line ) ) && filter.matchesText( line ) ) {
+                    writeMatch( writer, lineNumber, line );
+                    found++;
+                }
+                lineNumber++;
+            }
+        }
+    }
+
+
+    private static boolean isCandidate( LogIndex.Block block, int levelMask, long from, long to ) {
+        return (block.getLevelMask() & levelMask) != 0 && block.overlaps( from, to );
+    }
+
+
+    private static void writeMatch( Writer writer, long lineNumber, String line ) throws IOException {
+        Map<String, Object> match = new HashMap<>();
+        match.put( "line", lineNumber );
+        match.put( "text", line );
+        writer.write( gson.toJson( match ) );
+        writer.write( '\n' );
+    }
+
+
+    private static BufferedReader openCompressed( File file ) throws IOException {
+        return new BufferedReader( new InputStreamReader( new GZIPInputStream( new FileInputStream( file ), 64 * 1024 ), StandardCharsets.UTF_8 ) );
+    }
+
+
+    private static boolean isCompressed( File file ) {
+        return file.getName().endsWith( LogRetention.COMPRESSED_SUFFIX );
+    }
+
+
+    private static File getLogsDir() {
+        return new File( ConfigManager.getConfig().getString( "pcrtl.logsdir" ) );
+    }
+
+
+    /**
+     * @return The requested log file or null if the parameter does not name a log file in the logs directory.
+     */
+    private static File getFile( Context ctx ) throws IOException {
+        String name = ctx.queryParam( "file" );
+        if ( name != null && name.startsWith( LogRetention.LOG_FILE_PREFIX ) && !name.endsWith( LogIndex.SUFFIX ) ) {
+            File logsDir = getLogsDir().getCanonicalFile();
+            File file = new File( logsDir, name ).getCanonicalFile();
+            if ( logsDir.equals( file.getParentFile() ) && file.isFile() ) {
+                return file;
+            }
+        }
+        ctx.status( 404 ).result( "Unknown log file: " + name );
+        return null;
+    }
+
+
+    private static long getLong( Context ctx, String parameter, long defaultValue ) {
+        String value = ctx.queryParam( parameter );
+        if ( value == null || value.isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong( value );
+        } catch ( NumberFormatException e ) {
+            throw new BadRequestResponse( "Invalid value for " + parameter + ": " + value );
+        }
+    }
+
+
+    private static class LineFilter {
+
+        private final Pattern pattern;
+        private final Level minLevel;
+
+
+        LineFilter( Pattern pattern, Level minLevel ) {
+            this.pattern = pattern;
+            this.minLevel = minLevel;
+        }
+
+
+        // Lines without level (e.g., stack traces) are not filtered by level
+        boolean matchesLevel( Level level ) {
+            return minLevel == null || level == null || level.toInt() >= minLevel.toInt();
+        }
+
+
+        boolean matchesText( String line ) {
+            return pattern == null || pattern.matcher( line ).find();
+        }
+
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+
+
+/**
+ * A sparse index of a log file, stored next to it as <code>&lt;file&gt;.idx</code>. The file is divided into blocks of
+ * at most {@link #BLOCK_LINES} lines or {@link #BLOCK_BYTES} bytes. For every block, the index contains the number of
+ * its first line, its offsets, the time its first and last line have been written and the log levels occurring in it.
+ * This allows to seek directly to a line or a point in time and to skip blocks which cannot contain matches.
+ *
+ * The index is written incrementally by the {@link AsyncLogWriter} while the file is written. For log files not written
+ * by Control (e.g., in file output mode or from older versions), the missing part of the index is built when the
+ * index is loaded. The time of these blocks is unknown.
+ */
+@Slf4j
+class LogIndex {
+
+    static final String SUFFIX = ".idx";
+    static final int BLOCK_LINES = 1024;
+    static final int BLOCK_BYTES = 256 * 1024;
+
+    static final long UNKNOWN_TIME = -1;
+    // Bit set in the level mask of a block containing lines without a recognizable level (e.g., stack traces)
+    static final int NO_LEVEL = 1 << Level.values().length;
+
+    private static final int PREFIX_LENGTH = 128;
+    private static final Object persistLock = new Object();
+
+    @Getter
+    private final List<Block> blocks;
+
+
+    private LogIndex( List<Block> blocks ) {
+        this.blocks = Collections.unmodifiableList( blocks );
+    }
+
+
+    static File indexFileOf( File logFile ) {
+        return new File( logFile.getPath() + SUFFIX );
+    }
+
+
+    static int levelBit( Level level ) {
+        return level == null ? NO_LEVEL : 1 << level.ordinal();
+    }
+
+
+    /**
+     * @return A mask containing the bits of all levels at least as severe as the given level and lines without level.
+     */
+    static int levelMaskAtLeast( Level minLevel ) {
+        int mask = NO_LEVEL;
+        for ( Level level : Level.values() ) {
+            if ( level.toInt() >= minLevel.toInt() ) {
+                mask |= levelBit( level );
+            }
+        }
+        return mask;
+    }
+
+
+    /**
+     * Loads the index of a log file. The part of the file not covered by the persisted index is scanned. If the file is
+     * not written by Control at the moment, the index is extended on disk.
+     */
+    static LogIndex load( File logFile ) throws IOException {
+        synchronized ( persistLock ) {
+            File indexFile = indexFileOf( logFile );
+            List<Block> blocks = readBlocks( indexFile );
+            try ( FileChannel channel = FileChannel.open( logFile.toPath(), StandardOpenOption.READ ) ) {
+                long size = channel.size();
+                if ( !blocks.isEmpty() && blocks.get( blocks.size() - 1 ).endOffset > size ) {
+                    // The log file has been replaced, rebuild the index
+                    log.info( "Discarding outdated index of {}", logFile.getName() );
+                    blocks.clear();
+                }
+                Block last = blocks.isEmpty() ? null : blocks.get( blocks.size() - 1 );
+                long offset = last == null ? 0 : last.endOffset;
+                long line = last == null ? 0 : last.getEndLine();
+                if ( offset >= size ) {
+                    return new LogIndex( blocks );
+                }
+
+                boolean persist = !LogRetention.isActive( logFile );
+                List<Block> scanned = new ArrayList<>();
+                Builder builder = new Builder( offset, line, scanned::add );
+                byte[] prefix = new byte[PREFIX_LENGTH];
+                long end = MappedLogReader.scan( channel, offset, size, line, false, ( lineNumber, start, lineEnd, window, position, length ) -> {
+                    int prefixLength = MappedLogReader.prefix( window, position, length, prefix );
+                    builder.addLine( lineEnd, LogLevels.parse( prefix, 0, prefixLength ), UNKNOWN_TIME );
+                    return true;
+                } );
+                builder.finish();
+                if ( persist && !scanned.isEmpty() ) {
+                    try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( indexFile, !blocks.isEmpty() ) ) ) ) {
+                        for ( Block block : scanned ) {
+                            block.write( out );
+                        }
+                    } catch ( IOException e ) {
+                        log.warn( "Unable to write index of {}", logFile.getName(), e );
+                    }
+                }
+                blocks.addAll( scanned );
+                if ( end < size ) {
+                    // A last line which is not terminated yet, only kept in memory
+                    Builder partial = new Builder( end, builder.line, blocks::add );
+                    byte[] bytes = new byte[(int) Math.min( PREFIX_LENGTH, size - end )];
+                    channel.read( ByteBuffer.wrap( bytes ), end );
+                    partial.addLine( size, LogLevels.parse( bytes, 0, bytes.length ), UNKNOWN_TIME );
+                    partial.finish();
+                }
+            }
+            return new LogIndex( blocks );
+        }
+    }
+
+
+    /**
+     * Loads the persisted index of a log file without checking or extending it, e.g., for compressed segments whose index
+     * has been kept from before the compression (the offsets refer to the uncompressed content).
+     */
+    static LogIndex loadPersisted( File logFile ) {
+        synchronized ( persistLock ) {
+            return new LogIndex( readBlocks( indexFileOf( logFile ) ) );
+        }
+    }
+
+
+    private static List<Block> readBlocks( File indexFile ) {
+        List<Block> blocks = new ArrayList<>();
+        if ( !indexFile.exists() ) {
+            return blocks;
+        }
+        long records = indexFile.length() / Block.SIZE; // Ignores a partially written record
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) ) ) {
+            for ( long i = 0; i < records; i++ ) {
+                blocks.add( Block.read( in ) );
+            }
+        } catch ( IOException e ) {
+            log.warn( "Unable to read index {}", indexFile, e );
+            blocks.clear();
+        }
+        return blocks;
+    }
+
+
+    long getLineCount() {
+        return blocks.isEmpty() ? 0 : blocks.get( blocks.size() - 1 ).getEndLine();
+    }
+
+
+    /**
+     * @return The index of the block containing the line or -1 if the line does not exist.
+     */
+    int findLine( long line ) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get( mid );
+            if ( line < block.startLine ) {
+                high = mid - 1;
+            } else if ( line >= block.getEndLine() ) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return The index of the first block which might contain lines written at or after the given time, or the number
+     * of blocks if there is none.
+     */
+    int findTime( long time ) {
+        for ( int i = 0; i < blocks.size(); i++ ) {
+            Block block = blocks.get( i );
+            if ( block.lastTime == UNKNOWN_TIME || block.lastTime >= time ) {
+                return i;
+            }
+        }
+        return blocks.size();
+    }
+
+
+    /**
+     * Builds the blocks of an index line by line.
+     */
+    private static class Builder {
+
+        private final Consumer<Block> sink;
+        private long startOffset;
+        private long startLine;
+        private long offset;
+        private long line;
+        private long firstTime;
+        private long lastTime;
+        private int levelMask;
+
+
+        Builder( long offset, long line, Consumer<Block> sink ) {
+            this.sink = sink;
+            this.offset = offset;
+            this.line = line;
+            reset();
+        }
+
+
+        void addLine( long end, Level level, long time ) {
+            if ( line == startLine ) {
+                firstTime = time;
+            }
+            offset = end;
+            line++;
+            lastTime = time;
+            levelMask |= levelBit( level );
+            if ( line - startLine >= BLOCK_LINES || offset - startOffset >= BLOCK_BYTES ) {
+                finish();
+            }
+        }
+
+
+        void finish() {
+            if ( line > startLine ) {
+                sink.accept( new Block( startLine, startOffset, offset, firstTime, lastTime, levelMask, (int) (line - startLine) ) );
+                reset();
+            }
+        }
+
+
+        private void reset() {
+            startOffset = offset;
+            startLine = line;
+            firstTime = UNKNOWN_TIME;
+            lastTime = UNKNOWN_TIME;
+            levelMask = 0;
+        }
+
+    }
+
+
+    /**
+     * Writes the index of a log file while it is written. Used by the {@link AsyncLogWriter} only, not thread-safe.
+     */
+    static class Writer {
+
+        private final DataOutputStream out;
+        private final Builder builder;
+        private final byte[] prefix = new byte[PREFIX_LENGTH];
+        private int prefixLength = 0;
+        private long offset = 0;
+        private IOException failure = null;
+
+
+        Writer( File logFile ) throws IOException {
+            this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( indexFileOf( logFile ), false ) ) );
+            this.builder = new Builder( 0, 0, this::write );
+        }
+
+
+        void append( byte[] chunk, int off, int len ) {
+            long now = System.currentTimeMillis();
+            for ( int i = off; i < off + len; i++ ) {
+                byte b = chunk[i];
+                if ( b == '\n' ) {
+                    builder.addLine( offset + (i - off) + 1, LogLevels.parse( prefix, 0, prefixLength ), now );
+                    prefixLength = 0;
+                } else if ( prefixLength < PREFIX_LENGTH ) {
+                    prefix[prefixLength++] = b;
+                }
+            }
+            offset += len;
+        }
+
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+
+        /**
+         * Completes the index. A last line without line break is indexed as well.
+         */
+        void close() throws IOException {
+            if ( builder.offset < offset ) {
+                builder.addLine( offset, LogLevels.parse( prefix, 0, prefixLength ), System.currentTimeMillis() );
+            }
+            builder.finish();
+            out.close();
+            if ( failure != null ) {
+                throw failure;
+            }
+        }
+
+
+        private void write( Block block ) {
+            try {
+                block.write( out );
+            } catch ( IOException e ) {
+                failure = e;
+            }
+        }
+
+    }
+
+
+    @Getter
+    static class Block {
+
+        static final int SIZE = 5 * Long.BYTES + 2 * Integer.BYTES;
+
+        private final long startLine;
+        private final long startOffset;
+        private final long endOffset;
+        private final long firstTime;
+        private final long lastTime;
+        private final int levelMask;
+        private final int lineCount;
+
+
+        Block( long startLine, long startOffset, long endOffset, long firstTime, long lastTime, int levelMask, int lineCount ) {
+            this.startLine = startLine;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.levelMask = levelMask;
+            this.lineCount = lineCount;
+        }
+
+
+        long getEndLine() {
+            return startLine + lineCount;
+        }
+
+
+        boolean overlaps( long from, long to ) {
+            if ( firstTime == UNKNOWN_TIME || lastTime == UNKNOWN_TIME ) {
+                return true;
+            }
+            return lastTime >= from && firstTime <= to;
+        }
+
+
+        void write( DataOutputStream out ) throws IOException {
+            out.writeLong( startLine );
+            out.writeLong( startOffset );
+            out.writeLong( endOffset );
+            out.writeLong( firstTime );
+            out.writeLong( lastTime );
+            out.writeInt( levelMask );
+            out.writeInt( lineCount );
+        }
+
+
+        static Block read( DataInputStream in ) throws IOException {
+            return new Block( in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readInt() );
+        }
+
+    }
+
+}
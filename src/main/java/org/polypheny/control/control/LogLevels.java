@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.nio.charset.StandardCharsets;
+import org.slf4j.event.Level;
+
+
+/**
+ * Recognizes the log level of a line of output of Polypheny-DB.
+ */
+public final class LogLevels {
+
+    // The level is part of the prefix of a log line
+    private static final int MAX_PREFIX = 128;
+
+
+    private LogLevels() {
+        // Utility class
+    }
+
+
+    /**
+     * @return The level of the first whitespace separated token naming a log level (optionally in brackets, as in
+     * <code>[INFO]</code>), or null if there is none.
+     */
+    public static Level parse( CharSequence line ) {
+        int end = Math.min( line.length(), MAX_PREFIX );
+        int start = 0;
+        while ( start < end ) {
+            while ( start < end && Character.isWhitespace( line.charAt( start ) ) ) {
+                start++;
+            }
+            int tokenEnd = start;
+            while ( tokenEnd < end && !Character.isWhitespace( line.charAt( tokenEnd ) ) ) {
+                tokenEnd++;
+            }
+            Level level = toLevel( line, start, tokenEnd );
+            if ( level != null ) {
+                return level;
+            }
+            start = tokenEnd;
+        }
+        return null;
+    }
+
+
+    /**
+     * Same as {@link #parse(CharSequence)} for an encoded line. Only the (ASCII) prefix of the line is inspected, so the
+     * line does not need to be decoded.
+     */
+    public static Level parse( byte[] bytes, int offset, int length ) {
+        return parse( new AsciiSequence( bytes, offset, Math.min( length, MAX_PREFIX ) ) );
+    }
+
+
+    private static Level toLevel( CharSequence line, int start, int end ) {
+        if ( end - start > 2 && line.charAt( start ) == '[' && line.charAt( end - 1 ) == ']' ) {
+            start++;
+            end--;
+        }
+        for ( Level level : Level.values() ) {
+            String name = level.name();
+            if ( name.length() == end - start && name.contentEquals( line.subSequence( start, end ) ) ) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+
+    private static class AsciiSequence implements CharSequence {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+
+        AsciiSequence( byte[] bytes, int offset, int length ) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+
+        @Override
+        public char charAt( int index ) {
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+
+        @Override
+        public CharSequence subSequence( int start, int end ) {
+            return new AsciiSequence( bytes, offset + start, end - start );
+        }
+
+
+        @Override
+        public String toString() {
+            return new String( bytes, offset, length, StandardCharsets.ISO_8859_1 );
+        }
+
+    }
+
+}
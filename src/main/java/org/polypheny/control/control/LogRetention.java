@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Maintains the logs directory: closed log segments are compressed and the oldest log files are deleted as soon as all
+ * log files together exceed the configured budget. Log files which are currently written or waiting to be compressed are
+ * never deleted. All work is done on a single low-priority background thread.
+ */
+@Slf4j
+class LogRetention {
+
+    static final String LOG_FILE_PREFIX = "polypheny-db_";
+    static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final boolean compress;
+    private static final long budget;
+
+    private static final Set<File> activeFiles = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor( r -> {
+        Thread thread = new Thread( r, "LogRetention" );
+        thread.setDaemon( true );
+        thread.setPriority( Thread.MIN_PRIORITY );
+        return thread;
+    } );
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        compress = config.getBoolean( "pcrtl.logs.compress" );
+        budget = config.getBytes( "pcrtl.logs.retention.budget" );
+    }
+
+
+    /**
+     * Marks a file as being written. Active files are neither compressed nor deleted.
+     */
+    static void activate( File file ) {
+        activeFiles.add( file.getAbsoluteFile() );
+    }
+
+
+    static void deactivate( File file ) {
+        activeFiles.remove( file.getAbsoluteFile() );
+    }
+
+
+    static boolean isActive( File file ) {
+        return activeFiles.contains( file.getAbsoluteFile() );
+    }
+
+
+    /**
+     * Compresses a closed segment (if enabled) and enforces the retention budget afterward.
+     */
+    static void segmentClosed( File segment ) {
+        if ( compress ) {
+            // Not to be deleted before it has been compressed
+            activeFiles.add( segment.getAbsoluteFile() );
+        }
+        executor.execute( () -> {
+            if ( compress ) {
+                compress( segment );
+                activeFiles.remove( segment.getAbsoluteFile() );
+            }
+            enforce( segment.getAbsoluteFile().getParentFile() );
+        } );
+    }
+
+
+    /**
+     * Asynchronously deletes the oldest log files in the given directory until the configured budget is met.
+     */
+    static void enforceAsync( File logsDir ) {
+        executor.execute( () -> enforce( logsDir ) );
+    }
+
+
+    /**
+     * @return The log files in the directory, without indexes and temporary files.
+     */
+    static File[] listLogFiles( File logsDir ) {
+        return logsDir.listFiles( ( dir, name ) -> name.startsWith( LOG_FILE_PREFIX ) && !name.endsWith( ".tmp" ) && !name.endsWith( LogIndex.SUFFIX ) );
+    }
+
+
+    private static long lengthWithIndex( File file ) {
+        return file.length() + LogIndex.indexFileOf( file ).length();
+    }
+
+
+    private static void compress( File segment ) {
+        File compressed = new File( segment.getPath() + COMPRESSED_SUFFIX );
+        File tmp = new File( compressed.getPath() + ".tmp" );
+        try ( InputStream in = new FileInputStream( segment ); OutputStream out = new GZIPOutputStream( new FileOutputStream( tmp ), 64 * 1024 ) ) {
+            in.transferTo( out );
+        } catch ( IOException e ) {
+            log.warn( "Unable to compress log segment {}", segment, e );
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move( tmp.toPath(), compressed.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            Files.delete( segment.toPath() );
+            // Compressed files are searched sequentially, but the index is kept for the line numbers and times of its blocks
+            File index = LogIndex.indexFileOf( segment );
+            if ( index.exists() ) {
+                Files.move( index.toPath(), LogIndex.indexFileOf( compressed ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        } catch ( IOException e ) {
+            log.warn( "Unable to replace log segment {} by its compressed version", segment, e );
+        }
+    }
+
+
+    private static void enforce( File logsDir ) {
+        if ( budget <= 0 ) {
+            return;
+        }
+        File[] files = listLogFiles( logsDir );
+        if ( files == null ) {
+            return;
+        }
+        long total = Arrays.stream( files ).mapToLong( LogRetention::lengthWithIndex ).sum();
+        if ( total <= budget ) {
+            return;
+        }
+        Arrays.sort( files, Comparator.comparingLong( File::lastModified ).thenComparing( File::getName ) );
+        for ( File file : files ) {
+            if ( total <= budget ) {
+                break;
+            }
+            if ( activeFiles.contains( file.getAbsoluteFile() ) ) {
+                continue;
+            }
+            long length = lengthWithIndex( file );
+            if ( file.delete() ) {
+                LogIndex.indexFileOf( file ).delete();
+                total -= length;
+                log.info( "Deleted log file {} to stay within the retention budget", file.getName() );
+            } else {
+                log.warn( "Unable to delete log file {}", file );
+            }
+        }
+    }
+
+}
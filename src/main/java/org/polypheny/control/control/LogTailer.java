@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SystemUtils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+
+/**
+ * Follows a file and hands every complete line to a {@link Listener}. All tailers share one reader thread which sleeps
+ * on a {@link WatchService} (inotify on Linux) and only wakes up if one of the tailed files has changed. New data is read
+ * with positioned reads from a {@link FileChannel} into a buffer which is reused for the whole lifetime of the tailer.
+ */
+@Slf4j
+public class LogTailer implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final List<LogTailer> tailers = new CopyOnWriteArrayList<>();
+    private static final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private static WatchService watchService;
+    private static Thread readerThread;
+
+
+    static {
+        Metrics.gauge( "pcrtl_tailer_lag_bytes", "Number of bytes written to the tailed files which have not been read yet", LogTailer::getLag );
+    }
+
+    @Getter
+    private final File file;
+    private final Path path;
+    private final Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+    private final LineSplitter splitter = new LineSplitter( this::emitLine );
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long position = 0;
+    private volatile boolean closed = false;
+
+    private final long registeredAt = System.nanoTime();
+    private volatile long firstLineLatency = -1;
+
+
+    private LogTailer( File file, Listener listener ) {
+        this.file = file;
+        this.path = file.toPath().toAbsolutePath();
+        this.listener = listener;
+    }
+
+
+    /**
+     * Starts following the given file from its beginning.
+     */
+    public static LogTailer tail( File file, Listener listener ) {
+        LogTailer tailer = new LogTailer( file, listener );
+        listener.init( tailer );
+        synchronized ( tailer ) {
+            if ( !tailer.open() ) {
+                return tailer;
+            }
+            try {
+                register( tailer );
+            } catch ( IOException e ) {
+                listener.handle( e );
+                return tailer;
+            }
+            // Read what is already there. Everything else is triggered by the reader thread.
+            tailer.read();
+        }
+        return tailer;
+    }
+
+
+    private static synchronized void register( LogTailer tailer ) throws IOException {
+        if ( watchService == null ) {
+            watchService = FileSystems.getDefault().newWatchService();
+            readerThread = new Thread( LogTailer::watch, "LogTailer" );
+            readerThread.setDaemon( true );
+            readerThread.start();
+        }
+        Path dir = tailer.path.getParent();
+        if ( !watchKeys.containsKey( dir ) ) {
+            watchKeys.put( dir, dir.register( watchService, ENTRY_CREATE, ENTRY_MODIFY ) );
+        }
+        tailers.add( tailer );
+    }
+
+
+    private static synchronized void unregister( LogTailer tailer ) {
+        tailers.remove( tailer );
+        Path dir = tailer.path.getParent();
+        if ( tailers.stream().noneMatch( t -> t.path.getParent().equals( dir ) ) ) {
+            WatchKey key = watchKeys.remove( dir );
+            if ( key != null ) {
+                key.cancel();
+            }
+        }
+    }
+
+
+    private static void watch() {
+        // On Linux, the watch service is backed by inotify and changes are signaled immediately. On other platforms the
+        // JDK falls back to polling with a rather coarse interval, therefore we additionally check the files ourselves.
+        long pollInterval = SystemUtils.IS_OS_LINUX ? -1 : ConfigManager.getConfig().getDuration( "pcrtl.tailer.pollinterval", TimeUnit.MILLISECONDS );
+        while ( true ) {
+            WatchKey key;
+            try {
+                key = pollInterval < 0 ? watchService.take() : watchService.poll( pollInterval, TimeUnit.MILLISECONDS );
+            } catch ( InterruptedException | ClosedWatchServiceException e ) {
+                return;
+            }
+            if ( key == null ) {
+                tailers.forEach( LogTailer::read );
+                continue;
+            }
+            Path dir = (Path) key.watchable();
+            boolean readAll = false;
+            for ( WatchEvent<?> event : key.pollEvents() ) {
+                if ( event.kind() == OVERFLOW ) {
+                    readAll = true;
+                    continue;
+                }
+                Path changed = dir.resolve( (Path) event.context() );
+                for ( LogTailer tailer : tailers ) {
+                    if ( tailer.path.equals( changed ) ) {
+                        tailer.read();
+                    }
+                }
+            }
+            key.reset();
+            if ( readAll ) {
+                tailers.forEach( LogTailer::read );
+            }
+        }
+    }
+
+
+    private boolean open() {
+        try {
+            channel = FileChannel.open( path, StandardOpenOption.READ );
+            fileKey = Files.readAttributes( path, BasicFileAttributes.class ).fileKey();
+            position = 0;
+            return true;
+        } catch ( NoSuchFileException e ) {
+            listener.fileNotFound();
+            return false;
+        } catch ( IOException e ) {
+            listener.handle( e );
+            return false;
+        }
+    }
+
+
+    private synchronized void read() {
+        if ( closed || channel == null ) {
+            return;
+        }
+        try {
+            // The file has been replaced (e.g., rotated by renaming it). Drain the old file before switching to the new one.
+            Object currentKey = currentFileKey();
+            if ( currentKey != null && fileKey != null && !Objects.equals( currentKey, fileKey ) ) {
+                drain();
+                channel.close();
+                listener.fileRotated();
+                if ( !open() ) {
+                    return;
+                }
+            } else if ( channel.size() < position ) {
+                // The file has been truncated
+                listener.fileRotated();
+                position = 0;
+                splitter.reset();
+            }
+            drain();
+        } catch ( IOException e ) {
+            listener.handle( e );
+        } catch ( RuntimeException e ) {
+            // Do not let a failing consumer take down the shared reader thread
+            log.warn( "Exception while handling lines of {}", file.getName(), e );
+        }
+    }
+
+
+    private Object currentFileKey() {
+        try {
+            return Files.readAttributes( path, BasicFileAttributes.class ).fileKey();
+        } catch ( IOException e ) {
+            // The file is currently not there (e.g., in the middle of a rotation)
+            return null;
+        }
+    }
+
+
+    private void drain() throws IOException {
+        int read;
+        while ( !closed && (read = channel.read( buffer, position )) > 0 ) {
+            position += read;
+            buffer.flip();
+            splitter.feed( buffer );
+            buffer.clear();
+        }
+    }
+
+
+    private void emitLine( String line ) {
+        if ( firstLineLatency < 0 ) {
+            firstLineLatency = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - registeredAt );
+            log.debug( "First line of {} has been read after {} ms", file.getName(), firstLineLatency );
+        }
+        listener.handle( line );
+    }
+
+
+    /**
+     * @return The number of bytes which have been written to the tailed files but not read yet
+     */
+    static long getLag() {
+        long lag = 0;
+        for ( LogTailer tailer : tailers ) {
+            try {
+                lag += Math.max( Files.size( tailer.path ) - tailer.position, 0 );
+            } catch ( IOException e ) {
+                // The file is currently not there (e.g., in the middle of a rotation)
+            }
+        }
+        return lag;
+    }
+
+
+    /**
+     * @return Milliseconds between the start of this tailer and the first line it has read or -1 if there was no line yet.
+     */
+    public long getFirstLineLatency() {
+        return firstLineLatency;
+    }
+
+
+    @Override
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        unregister( this );
+        synchronized ( this ) {
+            if ( channel != null ) {
+                try {
+                    channel.close();
+                } catch ( IOException e ) {
+                    log.debug( "Exception while closing the tailed file {}", file, e );
+                }
+            }
+        }
+    }
+
+
+    public interface Listener {
+
+        void init( LogTailer tailer );
+
+        void fileNotFound();
+
+        void fileRotated();
+
+        void handle( String line );
+
+        void handle( Exception e );
+
+    }
+
+}
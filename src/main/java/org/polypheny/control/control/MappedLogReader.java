@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Reads the lines of a region of a log file using memory-mapped windows. Lines are passed to the visitor without
+ * decoding them; {@link #decode(MappedByteBuffer, int, int)} and {@link #prefix(MappedByteBuffer, int, int, byte[])}
+ * are available for the lines actually needed.
+ */
+class MappedLogReader {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+
+    private MappedLogReader() {
+        // Utility class
+    }
+
+
+    /**
+     * Scans the lines between the offsets. <code>from</code> has to be the start of a line.
+     *
+     * @param includePartial Whether a last line which is not terminated by a line break is passed to the visitor
+     * @return The offset after the last line passed to the visitor
+     */
+    static long scan( FileChannel channel, long from, long to, long firstLine, boolean includePartial, LineVisitor visitor ) throws IOException {
+        long windowStart = from;
+        long lineNumber = firstLine;
+        while ( windowStart < to ) {
+            int windowLength = (int) Math.min( WINDOW_SIZE, to - windowStart );
+            MappedByteBuffer window = channel.map( FileChannel.MapMode.READ_ONLY, windowStart, windowLength );
+            int lineStart = 0;
+            for ( int i = 0; i < windowLength; i++ ) {
+                if ( window.get( i ) == '\n' ) {
+                    int length = i - lineStart;
+                    if ( length > 0 && window.get( i - 1 ) == '\r' ) {
+                        length--;
+                    }
+                    if ( !visitor.visit( lineNumber++, windowStart + lineStart, windowStart + i + 1, window, lineStart, length ) ) {
+                        return windowStart + i + 1;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            boolean last = windowStart + windowLength >= to;
+            if ( last || lineStart == 0 ) {
+                // End of the region or a line longer than a window. In the second case, the window is treated as a line.
+                if ( lineStart < windowLength && (!last || includePartial) ) {
+                    visitor.visit( lineNumber++, windowStart + lineStart, windowStart + windowLength, window, lineStart, windowLength - lineStart );
+                    lineStart = windowLength;
+                }
+                if ( last ) {
+                    return windowStart + lineStart;
+                }
+            }
+            windowStart += lineStart;
+        }
+        return from;
+    }
+
+
+    static String decode( MappedByteBuffer window, int start, int length ) {
+        byte[] bytes = new byte[length];
+        window.get( start, bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+
+    /**
+     * Copies the beginning of a line into the scratch array.
+     *
+     * @return The number of bytes copied
+     */
+    static int prefix( MappedByteBuffer window, int start, int length, byte[] scratch ) {
+        int prefixLength = Math.min( length, scratch.length );
+        window.get( start, scratch, 0, prefixLength );
+        return prefixLength;
+    }
+
+
+    interface LineVisitor {
+
+        /**
+         * @param start Offset of the line in the file
+         * @param end Offset of the next line in the file
+         * @param window The mapped window containing the line
+         * @param position Position of the line in the window
+         * @param length Length of the line without the line break
+         * @return Whether to continue scanning
+         */
+        boolean visit( long lineNumber, long start, long end, MappedByteBuffer window, int position, int length ) throws IOException;
+
+    }
+
+}
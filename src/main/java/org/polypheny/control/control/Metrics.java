@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import io.javalin.http.Context;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+
+/**
+ * A registry of the metrics of Control which are exposed in the Prometheus text format. Updating a metric does not
+ * allocate: counters and histogram buckets are {@link LongAdder}s. Callers on hot paths should keep the returned metric
+ * instead of looking it up again.
+ *
+ * Labels are passed as alternating names and values.
+ */
+public class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+
+    public static Counter counter( String name, String help, String... labels ) {
+        return register( name, help, "counter", labels, Counter::new );
+    }
+
+
+    /**
+     * A histogram of durations recorded in nanoseconds and exposed in seconds (buckets from about 1 us to about 73 min).
+     */
+    public static Histogram durationHistogram( String name, String help, String... labels ) {
+        return register( name, help, "histogram", labels, () -> new Histogram( 10, 42, 1e-9 ) );
+    }
+
+
+    /**
+     * A histogram of sizes in bytes (buckets from 16 B to 64 MiB).
+     */
+    public static Histogram sizeHistogram( String name, String help, String... labels ) {
+        return register( name, help, "histogram", labels, () -> new Histogram( 4, 26, 1 ) );
+    }
+
+
+    public static void gauge( String name, String help, LongSupplier value, String... labels ) {
+        register( name, help, "gauge", labels, () -> new Gauge( value ) );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register( String name, String help, String type, String[] labels, Supplier<T> factory ) {
+        Family family = families.computeIfAbsent( name, n -> new Family( help, type ) );
+        if ( !family.type.equals( type ) ) {
+            throw new RuntimeException( "The metric " + name + " has already been registered as " + family.type );
+        }
+        return (T) family.metrics.computeIfAbsent( formatLabels( labels ), l -> factory.get() );
+    }
+
+
+    private static String formatLabels( String[] labels ) {
+        if ( labels.length % 2 != 0 ) {
+            throw new RuntimeException( "Labels must be passed as pairs of name and value" );
+        }
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < labels.length; i += 2 ) {
+            if ( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( labels[i] ).append( "=\"" );
+            for ( char c : labels[i + 1].toCharArray() ) {
+                if ( c == '\\' || c == '"' ) {
+                    sb.append( '\\' ).append( c );
+                } else if ( c == '\n' ) {
+                    sb.append( "\\n" );
+                } else {
+                    sb.append( c );
+                }
+            }
+            sb.append( '"' );
+        }
+        return sb.toString();
+    }
+
+
+    public static String format() {
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<String, Family> entry : families.entrySet() ) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            sb.append( "# HELP " ).append( name ).append( ' ' ).append( family.help ).append( '\n' );
+            sb.append( "# TYPE " ).append( name ).append( ' ' ).append( family.type ).append( '\n' );
+            for ( Map.Entry<String, Metric> metric : family.metrics.entrySet() ) {
+                metric.getValue().write( sb, name, metric.getKey() );
+            }
+        }
+        return sb.toString();
+    }
+
+
+    public static void scrape( Context ctx ) {
+        ctx.contentType( CONTENT_TYPE );
+        ctx.result( format() );
+    }
+
+
+    private static void writeSample( StringBuilder sb, String name, String labels, String value ) {
+        sb.append( name );
+        if ( !labels.isEmpty() ) {
+            sb.append( '{' ).append( labels ).append( '}' );
+        }
+        sb.append( ' ' ).append( value ).append( '\n' );
+    }
+
+
+    private static class Family {
+
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+
+        Family( String help, String type ) {
+            this.help = help;
+            this.type = type;
+        }
+
+    }
+
+
+    private interface Metric {
+
+        void write( StringBuilder sb, String name, String labels );
+
+    }
+
+
+    public static class Counter implements Metric {
+
+        private final LongAdder value = new LongAdder();
+
+
+        public void inc() {
+            value.increment();
+        }
+
+
+        public void add( long amount ) {
+            value.add( amount );
+        }
+
+
+        @Override
+        public void write( StringBuilder sb, String name, String labels ) {
+            writeSample( sb, name, labels, Long.toString( value.sum() ) );
+        }
+
+    }
+
+
+    /**
+     * A histogram with logarithmic buckets: the upper bounds are the powers of two between the minimum and maximum
+     * exponent, the relative error of a bucket is hence at most a factor of two. Values above the largest bound are only
+     * counted in the +Inf bucket.
+     */
+    public static class Histogram implements Metric {
+
+        private final int minExponent;
+        private final double scale;
+        private final LongAdder[] buckets;
+        private final LongAdder sum = new LongAdder();
+
+
+        Histogram( int minExponent, int maxExponent, double scale ) {
+            this.minExponent = minExponent;
+            this.scale = scale;
+            this.buckets = new LongAdder[maxExponent - minExponent + 2];
+            for ( int i = 0; i < buckets.length; i++ ) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+
+        public void record( long value ) {
+            // Exponent of the smallest power of two which is at least the value
+            int exponent = value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros( value - 1 );
+            buckets[Math.min( Math.max( exponent - minExponent, 0 ), buckets.length - 1 )].increment();
+            sum.add( value );
+        }
+
+
+        /**
+         * Records the nanoseconds elapsed since the given {@link System#nanoTime()}.
+         */
+        public void recordSince( long startNanos ) {
+            record( System.nanoTime() - startNanos );
+        }
+
+
+        @Override
+        public void write( StringBuilder sb, String name, String labels ) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long count = 0;
+            for ( int i = 0; i < buckets.length; i++ ) {
+                count += buckets[i].sum();
+                String bound = i == buckets.length - 1 ? "+Inf" : Double.toString( Math.scalb( scale, minExponent + i ) );
+                writeSample( sb, name + "_bucket", prefix + "le=\"" + bound + "\"", Long.toString( count ) );
+            }
+            writeSample( sb, name + "_sum", labels, Double.toString( sum.sum() * scale ) );
+            writeSample( sb, name + "_count", labels, Long.toString( count ) );
+        }
+
+    }
+
+
+    private static class Gauge implements Metric {
+
+        private final LongSupplier value;
+
+
+        Gauge( LongSupplier value ) {
+            this.value = value;
+        }
+
+
+        @Override
+        public void write( StringBuilder sb, String name, String labels ) {
+            writeSample( sb, name, labels, Long.toString( value.getAsLong() ) );
+        }
+
+    }
+
+}
@@ -32,11 +32,10 @@ public class PolyfierManager {
 
     public static boolean start( final ClientCommunicationStream logOutputStream, final ClientCommunicationStream polyfierOutputStream ) {
         // Check status
-        if ( ServiceManager.getStatus() != "idling" ) {
+        if ( !ServiceManager.enterPolyfierMode() ) {
             polyfierOutputStream.send( "Control must be in idle state. Stop Polypheny and try again." );
             return false;
         }
-        ServiceManager.polyfierMode = true;
         polyfierOutputStream.send( "Entering Polyfier mode" );
 
         if ( polyfierRunnerThread != null ) {
@@ -55,7 +54,7 @@ public class PolyfierManager {
 
 
     public static boolean stopForcefully( final ClientCommunicationStream logOutputStream, final ClientCommunicationStream polyfierOutputStream ) {
-        ServiceManager.polyfierMode = false;
+        ServiceManager.leavePolyfierMode();
         polyfierOutputStream.send( "Forcefully leaving Polyfier mode" );
         // ToDo: Solve differently
         polyfierRunnerThread.stop();
@@ -76,7 +75,7 @@ public class PolyfierManager {
 
 
     public static boolean stopGracefully( final ClientCommunicationStream logOutputStream, final ClientCommunicationStream polyfierOutputStream ) {
-        ServiceManager.polyfierMode = false;
+        ServiceManager.leavePolyfierMode();
         polyfierOutputStream.send( "Gracefully leaving Polyfier mode" );
         polyfierRunnerInstance.stopGracefully();
 
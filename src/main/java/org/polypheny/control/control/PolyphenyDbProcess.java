@@ -17,16 +17,15 @@
 package org.polypheny.control.control;
 
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.SystemUtils;
 import org.jvnet.winp.WinProcess;
-import org.jvnet.winp.WinpException;
 
 
 @Slf4j
@@ -55,17 +54,64 @@ public abstract class PolyphenyDbProcess {
     }
 
 
+    /**
+     * The exit code reported for processes which have not been spawned by Control ("PID Mode").
+     */
+    public static final int UNKNOWN_EXIT_CODE = -1;
+
     protected final Process process;
+    private final CompletableFuture<Integer> exit;
+    private volatile boolean alive = true;
+    private volatile long exitTime = 0;
 
 
-    protected PolyphenyDbProcess( final Process process ) {
+    protected PolyphenyDbProcess( final Process process, final long pid ) {
         this.process = process;
+        CompletableFuture<Integer> source;
+        if ( process != null ) {
+            source = process.onExit().thenApply( Process::exitValue );
+        } else {
+            // "PID Mode": the process is not a child of Control, hence the exit code is unknown
+            Optional<ProcessHandle> handle = ProcessHandle.of( pid );
+            source = handle.isPresent()
+                    ? handle.get().onExit().thenApply( h -> UNKNOWN_EXIT_CODE )
+                    : CompletableFuture.completedFuture( UNKNOWN_EXIT_CODE );
+        }
+        // Completes after the flag has been cleared, so that the dependent actions see the process as terminated
+        this.exit = source.whenComplete( ( exitCode, throwable ) -> {
+            exitTime = System.nanoTime();
+            alive = false;
+        } );
     }
 
 
     public abstract int getPid();
 
-    public abstract boolean isAlive();
+
+    /**
+     * Does not probe the operating system but reads the state maintained by the exit future.
+     */
+    public final boolean isAlive() {
+        return alive;
+    }
+
+
+    /**
+     * @return A future completing with the exit code (or {@link #UNKNOWN_EXIT_CODE}) when the process has terminated.
+     * The returned future cannot be used to complete the exit of the process.
+     */
+    public final CompletableFuture<Integer> onExit() {
+        return exit.copy();
+    }
+
+
+    /**
+     * @return The {@link System#nanoTime()} at which the termination of the process has been noticed or 0 if it is alive.
+     */
+    public final long getExitTime() {
+        return exitTime;
+    }
+
 
     public abstract void kill();
 
@@ -105,13 +151,13 @@ public abstract class PolyphenyDbProcess {
 
 
         WindowsPolyphenyDbProcess( final int pid ) {
-            super( null );
+            super( null, pid );
             winProcess = new WinProcess( pid );
         }
 
 
         WindowsPolyphenyDbProcess( final Process process ) {
-            super( process );
+            super( process, process.pid() );
             winProcess = new WinProcess( process );
         }
 
@@ -122,22 +168,6 @@ public abstract class PolyphenyDbProcess {
         }
 
 
-        @Override
-        public boolean isAlive() {
-            if ( super.process == null ) {
-                // "PID Mode"
-                try {
-                    winProcess.getEnvironmentVariables();
-                    return true;
-                } catch ( WinpException ex ) {
-                    return false;
-                }
-            } else {
-                return super.process.isAlive();
-            }
-        }
-
-
         @Override
         public void kill() {
             // "PID Mode"
@@ -174,23 +204,14 @@ public abstract class PolyphenyDbProcess {
 
 
         private UnixPolyphenyDbProcess( final int pid ) {
-            super( null );
+            super( null, pid );
             this.pid = pid;
         }
 
 
         private UnixPolyphenyDbProcess( final Process process ) {
-            super( process );
-            long pid = -1;
-
-            try {
-                ProcessHandle handle = process.toHandle();
-                pid = handle.pid();
-            } catch ( UnsupportedOperationException e ) {
-                log.error( "Exception while extracting the PID from java.lang.Process.", e );
-            } finally {
-                this.pid = (int) pid;
-            }
+            super( process, process.pid() );
+            this.pid = (int) process.pid();
         }
 
 
@@ -200,31 +221,6 @@ public abstract class PolyphenyDbProcess {
         }
 
 
-        @Override
-        public boolean isAlive() {
-            if ( super.process == null ) {
-                // "PID Mode"
-                try {
-                    Process process = Runtime.getRuntime().exec( "ps -p " + pid );
-                    try ( BufferedReader input = new BufferedReader( new InputStreamReader( process.getInputStream() ) ) ) {
-                        String line;
-                        while ( (line = input.readLine()) != null ) {
-                            if ( line.contains( " " + pid + " " ) ) {
-                                return true;
-                            }
-                        }
-                    }
-                    return false;
-                } catch ( IOException e ) {
-                    log.warn( "IOException while checking if {} is still alive.", pid, e );
-                    return false;
-                }
-            } else {
-                return super.process.isAlive();
-            }
-        }
-
-
         @Override
         public void kill() {
             // "PID Mode"
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Drains an output stream (stdout or stderr) of the Polypheny-DB process. Every chunk is handed to an
+ * {@link AsyncLogWriter} and at the same time split into lines which are passed to the consumers. This avoids writing
+ * the output to disk just to read it back again.
+ */
+@Slf4j
+class ProcessOutputPump {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String name;
+    private final InputStream in;
+    private final AsyncLogWriter writer;
+    private final List<Consumer<String>> consumers;
+    private final LineSplitter splitter = new LineSplitter( this::emitLine );
+    private final long startedAt = System.nanoTime();
+    private boolean firstLine = true;
+    private volatile boolean detached = false;
+
+
+    private ProcessOutputPump( String name, InputStream in, File file, List<Consumer<String>> consumers ) {
+        this.name = name;
+        this.in = in;
+        this.writer = new AsyncLogWriter( file );
+        this.consumers = consumers;
+    }
+
+
+    static ProcessOutputPump start( String name, InputStream in, File file, List<Consumer<String>> consumers ) {
+        ProcessOutputPump pump = new ProcessOutputPump( name, in, file, consumers );
+        Thread thread = new Thread( pump::run, "ProcessOutputPump-" + name );
+        thread.setDaemon( true );
+        thread.start();
+        return pump;
+    }
+
+
+    /**
+     * Stops passing lines to the consumers. The stream is still drained and written to the file until the process
+     * terminates.
+     */
+    void detach() {
+        detached = true;
+    }
+
+
+    private void run() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ( (read = in.read( buffer )) != -1 ) {
+                writer.write( Arrays.copyOf( buffer, read ) );
+                splitter.feed( buffer, 0, read );
+            }
+            splitter.flush();
+        } catch ( IOException e ) {
+            log.debug( "Exception while reading the {} of Polypheny-DB", name, e );
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    private void emitLine( String line ) {
+        if ( detached ) {
+            return;
+        }
+        if ( firstLine ) {
+            firstLine = false;
+            log.info( "> First output of Polypheny-DB received after {} ms ({})", TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startedAt ), name );
+        }
+        for ( Consumer<String> consumer : consumers ) {
+            try {
+                consumer.accept( line );
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while handling output of Polypheny-DB", e );
+            }
+        }
+    }
+
+}
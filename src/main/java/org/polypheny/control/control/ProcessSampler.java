@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.typesafe.config.Config;
+import io.javalin.http.Context;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Samples the resource usage of the Polypheny-DB process managed by Control from <code>/proc/&lt;pid&gt;</code> (Linux
+ * only): CPU usage, resident memory, threads, open file descriptors, context switches and disk I/O. The samples are
+ * stored in a preallocated ring buffer of longs; the files are read into a reused buffer and parsed in place.
+ */
+@Slf4j
+public class ProcessSampler {
+
+    // The columns of a sample. cpu is the CPU usage since the previous sample in hundredths of a percent of one core.
+    private static final String[] FIELDS = {
+            "timestamp", "pid", "cpu", "cpuTime", "rss", "threads", "fds",
+            "voluntaryContextSwitches", "involuntaryContextSwitches", "readBytes", "writeBytes" };
+    private static final int TIMESTAMP = 0;
+    private static final int PID = 1;
+    private static final int CPU = 2;
+    private static final int CPU_TIME = 3;
+    private static final int RSS = 4;
+    private static final int THREADS = 5;
+    private static final int FDS = 6;
+    private static final int VOLUNTARY_CTXT = 7;
+    private static final int INVOLUNTARY_CTXT = 8;
+    private static final int READ_BYTES = 9;
+    private static final int WRITE_BYTES = 10;
+
+    // USER_HZ, the unit of the CPU times in /proc/<pid>/stat. It is 100 on all common architectures.
+    private static final long TICKS_PER_SECOND = 100;
+
+    private static final byte[] VM_RSS = bytes( "VmRSS:" );
+    private static final byte[] THREADS_KEY = bytes( "Threads:" );
+    private static final byte[] VOLUNTARY_CTXT_KEY = bytes( "voluntary_ctxt_switches:" );
+    private static final byte[] INVOLUNTARY_CTXT_KEY = bytes( "nonvoluntary_ctxt_switches:" );
+    private static final byte[] READ_BYTES_KEY = bytes( "read_bytes:" );
+    private static final byte[] WRITE_BYTES_KEY = bytes( "write_bytes:" );
+
+    private static final long interval;
+    private static final int capacity;
+    private static final SampleBuffer samples;
+    private static final long[] current = new long[FIELDS.length];
+    private static final byte[] readBuffer = new byte[16 * 1024];
+    private static final List<Consumer<Map<String, String>>> listeners = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "ProcessSampler" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private static int pid = -1;
+    private static String statFile;
+    private static String statusFile;
+    private static String ioFile;
+    private static File fdDir;
+    private static File taskDir;
+    private static long previousCpuTime = -1;
+    private static long previousTime;
+    private static boolean started = false;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        interval = config.getDuration( "pcrtl.sampler.interval", TimeUnit.MILLISECONDS );
+        capacity = config.getInt( "pcrtl.sampler.capacity" );
+        samples = new SampleBuffer( FIELDS, Math.max( capacity, 1 ) );
+    }
+
+
+    public static void addListener( Consumer<Map<String, String>> listener ) {
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Starts sampling in the configured interval if <code>/proc</code> is available.
+     */
+    public static synchronized void start() {
+        if ( started || interval <= 0 || capacity <= 0 ) {
+            return;
+        }
+        if ( !new File( "/proc/self/stat" ).canRead() ) {
+            log.info( "Sampling the resource usage of Polypheny-DB is not supported on this platform" );
+            return;
+        }
+        started = true;
+        sampler.scheduleAtFixedRate( ProcessSampler::sample, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+
+    private static void sample() {
+        try {
+            int currentPid = ServiceManager.getPolyphenyDbPid();
+            if ( currentPid <= 0 ) {
+                pid = -1;
+                return;
+            }
+            if ( currentPid != pid ) {
+                pid = currentPid;
+                statFile = "/proc/" + pid + "/stat";
+                statusFile = "/proc/" + pid + "/status";
+                ioFile = "/proc/" + pid + "/io";
+                fdDir = new File( "/proc/" + pid + "/fd" );
+                taskDir = new File( "/proc/" + pid + "/task" );
+                previousCpuTime = -1;
+            }
+            if ( !read( current ) ) {
+                return;
+            }
+            samples.add( current );
+            if ( !listeners.isEmpty() ) {
+                Map<String, String> sample = samples.toMap( current );
+                listeners.forEach( listener -> listener.accept( sample ) );
+            }
+        } catch ( Exception e ) {
+            log.debug( "Exception while sampling the resource usage of Polypheny-DB", e );
+        }
+    }
+
+
+    // Returns false if the process has terminated in the meantime
+    private static boolean read( long[] sample ) {
+        long now = System.currentTimeMillis();
+        sample[TIMESTAMP] = now;
+        sample[PID] = pid;
+
+        int length = readFile( statFile );
+        if ( length < 0 ) {
+            return false;
+        }
+        // utime and stime are the fields 14 and 15
+        long ticks = statField( length, 14 ) + statField( length, 15 );
+        long cpuTime = ticks * 1000 / TICKS_PER_SECOND;
+        sample[CPU_TIME] = cpuTime;
+        sample[CPU] = previousCpuTime < 0 || now <= previousTime ? 0 : (cpuTime - previousCpuTime) * 10_000 / (now - previousTime);
+        previousCpuTime = cpuTime;
+        previousTime = now;
+
+        length = readFile( statusFile );
+        if ( length < 0 ) {
+            return false;
+        }
+        sample[RSS] = keyValue( length, VM_RSS ) * 1024;
+        sample[THREADS] = keyValue( length, THREADS_KEY );
+
+        // The context switches in the status of the process are those of the main thread only
+        long voluntary = 0;
+        long involuntary = 0;
+        String[] tasks = taskDir.list();
+        if ( tasks != null ) {
+            for ( String task : tasks ) {
+                length = readFile( taskDir.getPath() + File.separator + task + File.separator + "status" );
+                if ( length >= 0 ) {
+                    voluntary += keyValue( length, VOLUNTARY_CTXT_KEY );
+                    involuntary += keyValue( length, INVOLUNTARY_CTXT_KEY );
+                }
+            }
+        }
+        sample[VOLUNTARY_CTXT] = voluntary;
+        sample[INVOLUNTARY_CTXT] = involuntary;
+
+        // Not readable for processes of other users
+        length = readFile( ioFile );
+        sample[READ_BYTES] = length < 0 ? -1 : keyValue( length, READ_BYTES_KEY );
+        sample[WRITE_BYTES] = length < 0 ? -1 : keyValue( length, WRITE_BYTES_KEY );
+
+        String[] fds = fdDir.list();
+        sample[FDS] = fds == null ? -1 : fds.length;
+        return true;
+    }
+
+
+    private static int readFile( String file ) {
+        try ( FileInputStream in = new FileInputStream( file ) ) {
+            int length = 0;
+            int read;
+            while ( length < readBuffer.length && (read = in.read( readBuffer, length, readBuffer.length - length )) > 0 ) {
+                length += read;
+            }
+            return length;
+        } catch ( IOException e ) {
+            return -1;
+        }
+    }
+
+
+    // The second field (the command) is enclosed in parentheses and might contain spaces, hence the fields are counted
+    // from the last closing parenthesis on.
+    private static long statField( int length, int field ) {
+        int position = length - 1;
+        while ( position >= 0 && readBuffer[position] != ')' ) {
+            position--;
+        }
+        int index = 2;
+        for ( position++; position < length && index < field; position++ ) {
+            if ( readBuffer[position] == ' ' ) {
+                index++;
+            }
+        }
+        return parseLong( position, length );
+    }
+
+
+    // Returns the number following the key at the beginning of a line
+    private static long keyValue( int length, byte[] key ) {
+        int lineStart = 0;
+        while ( lineStart < length ) {
+            if ( startsWith( lineStart, length, key ) ) {
+                int position = lineStart + key.length;
+                while ( position < length && (readBuffer[position] == ' ' || readBuffer[position] == '\t') ) {
+                    position++;
+                }
+                return parseLong( position, length );
+            }
+            while ( lineStart < length && readBuffer[lineStart] != '\n' ) {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+
+    private static boolean startsWith( int position, int length, byte[] key ) {
+        if ( position + key.length > length ) {
+            return false;
+        }
+        for ( int i = 0; i < key.length; i++ ) {
+            if ( readBuffer[position + i] != key[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static long parseLong( int position, int length ) {
+        long value = 0;
+        for ( ; position < length && readBuffer[position] >= '0' && readBuffer[position] <= '9'; position++ ) {
+            value = value * 10 + (readBuffer[position] - '0');
+        }
+        return value;
+    }
+
+
+    private static byte[] bytes( String string ) {
+        return string.getBytes( StandardCharsets.US_ASCII );
+    }
+
+
+    /**
+     * Returns the buffered samples, the oldest first. Parameters: since (optional; only samples taken after this
+     * timestamp in milliseconds)
+     */
+    public static void getSamples( Context ctx ) {
+        samples.respond( ctx, interval );
+    }
+
+}
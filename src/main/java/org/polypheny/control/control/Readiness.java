@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.google.gson.Gson;
+import com.typesafe.config.Config;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Detects when a started Polypheny-DB is ready to process queries: when the configured marker has been found in its
+ * output and all configured ports accept connections. If neither is configured, Polypheny-DB is considered ready as soon
+ * as it has been spawned. The latency from spawning the process until it is ready is recorded for every start.
+ */
+@Slf4j
+public class Readiness {
+
+    private static final int HISTORY_SIZE = 100;
+    private static final int CONNECT_TIMEOUT = 200;
+
+    private static final Gson gson = new Gson();
+    private static final Pattern marker;
+    private static final List<Integer> ports;
+    private static final long probeInterval;
+    private static final long timeout;
+
+    private static final List<Consumer<Map<String, String>>> listeners = new CopyOnWriteArrayList<>();
+    private static final ArrayDeque<Map<String, Long>> history = new ArrayDeque<>();
+    private static final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "ReadinessProbe" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private static final Metrics.Histogram readyLatency = Metrics.durationHistogram(
+            "pcrtl_start_ready_latency_seconds", "Time from spawning Polypheny-DB until it is ready" );
+
+    private static volatile Attempt current = null;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        String markerStr = config.getString( "pcrtl.readiness.marker" );
+        marker = markerStr.isEmpty() ? null : Pattern.compile( markerStr );
+        ports = config.getIntList( "pcrtl.readiness.ports" );
+        probeInterval = config.getDuration( "pcrtl.readiness.probeinterval", TimeUnit.MILLISECONDS );
+        timeout = config.getDuration( "pcrtl.readiness.timeout", TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Adds a listener which is notified whenever the readiness changes. The map contains "ready" and, if ready, the
+     * "latency" (ms) of the start.
+     */
+    public static void addListener( Consumer<Map<String, String>> listener ) {
+        listeners.add( listener );
+    }
+
+
+    public static boolean isReady() {
+        Attempt attempt = current;
+        return attempt != null && !attempt.exited && attempt.ready.isDone() && !attempt.ready.isCompletedExceptionally();
+    }
+
+
+    /**
+     * Called after the process of Polypheny-DB has been spawned.
+     *
+     * @param spawnTime The {@link System#nanoTime()} before spawning the process
+     */
+    static void spawned( PolyphenyDbProcess process, long spawnTime ) {
+        Attempt attempt = new Attempt( spawnTime );
+        Attempt previous = current;
+        current = attempt;
+        if ( previous != null ) {
+            previous.cancel();
+        }
+        process.onExit().thenRun( () -> {
+            attempt.exited = true;
+            attempt.cancel();
+            if ( current == attempt ) {
+                publish( false, -1 );
+            }
+        } );
+        if ( !ports.isEmpty() ) {
+            attempt.probe = prober.scheduleWithFixedDelay( () -> probe( attempt ), 0, probeInterval, TimeUnit.MILLISECONDS );
+        }
+        prober.schedule( () -> {
+            if ( attempt.cancel() ) {
+                log.warn( "> Polypheny-DB is not ready after {} s", TimeUnit.MILLISECONDS.toSeconds( timeout ) );
+            }
+        }, timeout, TimeUnit.MILLISECONDS );
+        attempt.check();
+    }
+
+
+    /**
+     * Checks a line of output of Polypheny-DB for the marker.
+     */
+    static void onOutput( String line ) {
+        Attempt attempt = current;
+        if ( attempt != null && !attempt.markerFound && marker != null && marker.matcher( line ).find() ) {
+            attempt.markerFound = true;
+            attempt.check();
+        }
+    }
+
+
+    private static void probe( Attempt attempt ) {
+        if ( attempt.ready.isDone() ) {
+            attempt.stopProbing();
+            return;
+        }
+        for ( int port : ports ) {
+            try ( Socket socket = new Socket() ) {
+                socket.connect( new InetSocketAddress( "localhost", port ), CONNECT_TIMEOUT );
+            } catch ( IOException e ) {
+                return;
+            }
+        }
+        attempt.portsOpen = true;
+        attempt.check();
+    }
+
+
+    private static void ready( Attempt attempt, long latency ) {
+        readyLatency.record( TimeUnit.MILLISECONDS.toNanos( latency ) );
+        synchronized ( history ) {
+            if ( history.size() >= HISTORY_SIZE ) {
+                history.pollFirst();
+            }
+            Map<String, Long> entry = new HashMap<>();
+            entry.put( "timestamp", System.currentTimeMillis() );
+            entry.put( "latency", latency );
+            history.addLast( entry );
+        }
+        log.info( "> Polypheny-DB is ready (after {} ms)", latency );
+        if ( current == attempt ) {
+            publish( true, latency );
+        }
+    }
+
+
+    private static void publish( boolean ready, long latency ) {
+        Map<String, String> event = new HashMap<>();
+        event.put( "ready", "" + ready );
+        if ( ready ) {
+            event.put( "latency", "" + latency );
+        }
+        for ( Consumer<Map<String, String>> listener : listeners ) {
+            try {
+                listener.accept( event );
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while publishing readiness", e );
+            }
+        }
+    }
+
+
+    /**
+     * Returns whether Polypheny-DB is ready, the latency of the current start and the latencies of the previous starts.
+     * The state is "ready", "starting", "failed" (the current start has terminated or timed out before becoming ready) or
+     * "none" (Polypheny-DB has not been started). Only in the state "starting" it may still become ready.
+     * Parameters: timeout (optional; waits up to this number of milliseconds for Polypheny-DB to become ready)
+     */
+    public static void getReadiness( Context ctx ) {
+        long waitMillis;
+        String timeoutStr = ctx.queryParam( "timeout" );
+        try {
+            waitMillis = timeoutStr == null ? 0 : Long.parseLong( timeoutStr );
+        } catch ( NumberFormatException e ) {
+            throw new BadRequestResponse( "Invalid timeout: " + timeoutStr );
+        }
+        Attempt attempt = current;
+        if ( waitMillis <= 0 || attempt == null || attempt.ready.isDone() ) {
+            ctx.result( gson.toJson( toMap( attempt ) ) );
+        } else {
+            ctx.future( () -> attempt.ready
+                    .handle( ( latency, throwable ) -> latency )
+                    .completeOnTimeout( -1L, waitMillis, TimeUnit.MILLISECONDS )
+                    .thenAccept( latency -> ctx.result( gson.toJson( toMap( attempt ) ) ) ) );
+        }
+    }
+
+
+    private static Map<String, Object> toMap( Attempt attempt ) {
+        Map<String, Object> readiness = new HashMap<>();
+        boolean ready = attempt != null && attempt == current && isReady();
+        readiness.put( "ready", ready );
+        String state;
+        if ( attempt == null ) {
+            state = "none";
+        } else if ( ready ) {
+            state = "ready";
+        } else if ( attempt.ready.isDone() || attempt.exited ) {
+            state = "failed";
+        } else {
+            state = "starting";
+        }
+        readiness.put( "state", state );
+        if ( ready ) {
+            readiness.put( "latency", attempt.ready.join() );
+        }
+        synchronized ( history ) {
+            readiness.put( "history", new ArrayList<>( history ) );
+        }
+        return readiness;
+    }
+
+
+    private static class Attempt {
+
+        private final long spawnTime;
+        private final CompletableFuture<Long> ready = new CompletableFuture<>();
+        private volatile boolean markerFound = false;
+        private volatile boolean portsOpen = false;
+        private volatile boolean exited = false;
+        private volatile ScheduledFuture<?> probe;
+
+
+        Attempt( long spawnTime ) {
+            this.spawnTime = spawnTime;
+        }
+
+
+        void check() {
+            if ( (marker == null || markerFound) && (ports.isEmpty() || portsOpen) ) {
+                long latency = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - spawnTime );
+                if ( ready.complete( latency ) ) {
+                    stopProbing();
+                    Readiness.ready( this, latency );
+                }
+            }
+        }
+
+
+        // Returns true if the attempt has been canceled before becoming ready
+        boolean cancel() {
+            stopProbing();
+            return ready.completeExceptionally( new IllegalStateException( "Polypheny-DB has not become ready" ) );
+        }
+
+
+        private void stopProbing() {
+            ScheduledFuture<?> future = probe;
+            if ( future != null ) {
+                future.cancel( false );
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.google.gson.Gson;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+
+/**
+ * A preallocated ring buffer of samples, each consisting of a fixed number of longs. The first long of every sample is
+ * its timestamp in milliseconds. Adding a sample does not allocate.
+ */
+class SampleBuffer {
+
+    private static final Gson gson = new Gson();
+
+    @Getter
+    private final String[] fields;
+    private final int capacity;
+    private final long[] samples;
+    private long count = 0; // Total number of samples added
+
+
+    SampleBuffer( String[] fields, int capacity ) {
+        this.fields = fields;
+        this.capacity = capacity;
+        this.samples = new long[capacity * fields.length];
+    }
+
+
+    synchronized void add( long[] sample ) {
+        System.arraycopy( sample, 0, samples, (int) (count % capacity) * fields.length, fields.length );
+        count++;
+    }
+
+
+    /**
+     * @return The samples taken after the given timestamp, the oldest first
+     */
+    synchronized List<long[]> getSince( long since ) {
+        List<long[]> result = new ArrayList<>();
+        for ( long i = Math.max( 0, count - capacity ); i < count; i++ ) {
+            int offset = (int) (i % capacity) * fields.length;
+            if ( samples[offset] > since ) {
+                result.add( Arrays.copyOfRange( samples, offset, offset + fields.length ) );
+            }
+        }
+        return result;
+    }
+
+
+    Map<String, String> toMap( long[] sample ) {
+        Map<String, String> map = new HashMap<>();
+        for ( int i = 0; i < fields.length; i++ ) {
+            map.put( fields[i], Long.toString( sample[i] ) );
+        }
+        return map;
+    }
+
+
+    /**
+     * Responds with the fields and the buffered samples. Parameters: since (optional; only samples taken after this
+     * timestamp in milliseconds)
+     */
+    void respond( Context ctx, long interval ) {
+        long since = 0;
+        String sinceStr = ctx.queryParam( "since" );
+        if ( sinceStr != null ) {
+            try {
+                since = Long.parseLong( sinceStr );
+            } catch ( NumberFormatException e ) {
+                throw new BadRequestResponse( "Invalid timestamp: " + sinceStr );
+            }
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put( "interval", interval );
+        response.put( "fields", fields );
+        response.put( "samples", getSince( since ) );
+        ctx.result( gson.toJson( response ) );
+    }
+
+}
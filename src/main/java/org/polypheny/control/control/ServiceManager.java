@@ -32,31 +32,33 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.input.Tailer;
-import org.apache.commons.io.input.TailerListener;
 import org.apache.commons.lang3.SystemUtils;
 import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.util.FS;
 import org.gradle.tooling.BuildLauncher;
-import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.GradleConnectionException;
 import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.events.OperationType;
+import org.polypheny.control.control.ServiceStatus.State;
 import org.polypheny.control.httpinterface.ClientCommunicationStream;
 import org.polypheny.control.main.NotificationManager;
 import org.slf4j.Logger;
@@ -67,12 +69,27 @@ import org.slf4j.LoggerFactory;
 public class ServiceManager {
 
     private static final Object MUTEX = new Object();
-    private static PolyphenyDbProcess polyphenyDbProcess = null; // ! Shared over multiple stateless requests
-    private static Tailer logTailer = null; // ! Shared over multiple stateless requests
-    private static Tailer errTailer = null; // ! Shared over multiple stateless requests
 
-    private static boolean currentlyUpdating = false;
-    public static boolean polyfierMode = false;
+    private static final String PHASE_METRIC = "pcrtl_service_phase_duration_seconds";
+    private static final String PHASE_HELP = "Duration of the phases of starting, stopping and updating Polypheny-DB";
+    private static final Metrics.Histogram startSpawnDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "start", "phase", "spawn" );
+    private static final Metrics.Histogram stopKillDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "stop", "phase", "kill" );
+    private static final Metrics.Histogram updateCleanDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "update", "phase", "clean" );
+    private static final Metrics.Histogram updateUiDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "update", "phase", "ui" );
+    private static final Metrics.Histogram updatePullDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "update", "phase", "pdbPull" );
+    private static final Metrics.Histogram updateBuildDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "update", "phase", "pdbBuild" );
+    private static final Metrics.Histogram updateDuration = Metrics.durationHistogram( PHASE_METRIC, PHASE_HELP, "operation", "update", "phase", "total" );
+    private static final ExecutorService updateLanes = Executors.newFixedThreadPool( 2, r -> {
+        Thread thread = new Thread( r, "UpdateLane" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private static volatile PolyphenyDbProcess polyphenyDbProcess = null; // ! Shared over multiple stateless requests
+    private static LogTailer logTailer = null; // ! Shared over multiple stateless requests
+    private static LogTailer errTailer = null; // ! Shared over multiple stateless requests
+    private static ProcessOutputPump logPump = null; // ! Shared over multiple stateless requests
+    private static ProcessOutputPump errPump = null; // ! Shared over multiple stateless requests
+
 
     static {
         Runtime.getRuntime().addShutdownHook( new Thread( () -> {
@@ -151,7 +168,6 @@ public class ServiceManager {
 
 
     public static boolean start( final ClientCommunicationStream clientCommunicationStream, final boolean startTailers, String additionalArguments ) {
-        Config configuration = ConfigManager.getConfig();
         synchronized ( MUTEX ) {
             //restorePolyphenyDbProcess();
 
@@ -164,140 +180,188 @@ public class ServiceManager {
                 return false;
             }
 
-            String workingDir = configuration.getString( "pcrtl.workingdir" );
-            String pidFile = configuration.getString( "pcrtl.pdbms.pidfile" );
-            String logsDir = configuration.getString( "pcrtl.logsdir" );
-            String javaExecutable = configuration.getString( "pcrtl.java.executable" ) + (SystemUtils.IS_OS_WINDOWS ? ".exe" : "");
-            List<String> javaOptions = configuration.getStringList( "pcrtl.java.options" );
-            boolean exposeJavaDebug = configuration.getBoolean( "pcrtl.java.debug.expose" );
-            List<String> javaDebugOptions = configuration.getStringList( "pcrtl.java.debug.options" );
-            String javaMaximumHeapSize = configuration.getString( "pcrtl.java.heap" );
-            String pdbmsJar = configuration.getString( "pcrtl.pdbms.jarfile" );
-            String pdbmsMainClass = configuration.getString( "pcrtl.pdbms.mainclass" );
-            String pdbmsArgs = configuration.getString( "pcrtl.pdbms.args" );
-            String logFile = new File( new File( logsDir ), new SimpleDateFormat( "'polypheny-db_'yyyy.MM.dd_HH-mm-ss.SSS'.log'" ).format( new Date() ) ).getAbsolutePath();
-            String errFile = logFile.substring( 0, logFile.lastIndexOf( '.' ) ) + ".err.log";
-            //
-            //
+            setStatus( State.STARTING );
+            Supervisor.starting();
+            boolean started = false;
+            long spawnStart = System.nanoTime();
+            try {
+                started = spawn( clientCommunicationStream, additionalArguments );
+                startSpawnDuration.recordSince( spawnStart );
+            } finally {
+                setStatus( started ? State.RUNNING : State.IDLING );
+            }
+            if ( started ) {
+                watchExit( polyphenyDbProcess );
+                Supervisor.started();
+            }
+            return started;
+        }
+    }
 
-            LinkedList<String> javaOptionsFull = new LinkedList<>( javaOptions );
-            /*String applicationConfFileName = new File( new File( workingDir ), "config" ).getAbsolutePath() + File.separator + "application.conf";
-            if ( new File( applicationConfFileName ).exists() ) {
-                javaOptionsFull.addFirst( "-Dconfig.file=" + applicationConfFileName );
-            }*/
-            javaOptionsFull.addFirst( "-Xmx" + javaMaximumHeapSize + "G" );
 
-            // Expose Debug
-            if ( exposeJavaDebug ) {
-                javaOptionsFull.addAll( javaDebugOptions );
-            }
+    private static boolean spawn( final ClientCommunicationStream clientCommunicationStream, String additionalArguments ) {
+        Config configuration = ConfigManager.getConfig();
+        String workingDir = configuration.getString( "pcrtl.workingdir" );
+        String pidFile = configuration.getString( "pcrtl.pdbms.pidfile" );
+        String logsDir = configuration.getString( "pcrtl.logsdir" );
+        String javaExecutable = configuration.getString( "pcrtl.java.executable" ) + (SystemUtils.IS_OS_WINDOWS ? ".exe" : "");
+        List<String> javaOptions = configuration.getStringList( "pcrtl.java.options" );
+        boolean exposeJavaDebug = configuration.getBoolean( "pcrtl.java.debug.expose" );
+        List<String> javaDebugOptions = configuration.getStringList( "pcrtl.java.debug.options" );
+        String javaMaximumHeapSize = configuration.getString( "pcrtl.java.heap" );
+        String pdbmsJar = configuration.getString( "pcrtl.pdbms.jarfile" );
+        String pdbmsMainClass = configuration.getString( "pcrtl.pdbms.mainclass" );
+        String pdbmsArgs = configuration.getString( "pcrtl.pdbms.args" );
+        boolean pipeOutput = configuration.getString( "pcrtl.pdbms.outputmode" ).equals( "pipe" );
+        String logFile = new File( new File( logsDir ), new SimpleDateFormat( "'polypheny-db_'yyyy.MM.dd_HH-mm-ss.SSS'.log'" ).format( new Date() ) ).getAbsolutePath();
+        String errFile = logFile.substring( 0, logFile.lastIndexOf( '.' ) ) + ".err.log";
+        // Make room for the new log files
+        LogRetention.enforceAsync( new File( logsDir ) );
+        //
+        //
+
+        LinkedList<String> javaOptionsFull = new LinkedList<>( javaOptions );
+        /*String applicationConfFileName = new File( new File( workingDir ), "config" ).getAbsolutePath() + File.separator + "application.conf";
+        if ( new File( applicationConfFileName ).exists() ) {
+            javaOptionsFull.addFirst( "-Dconfig.file=" + applicationConfFileName );
+        }*/
+        javaOptionsFull.addFirst( "-Xmx" + javaMaximumHeapSize + "G" );
+
+        // Expose Debug
+        if ( exposeJavaDebug ) {
+            javaOptionsFull.addAll( javaDebugOptions );
+        }
 
-            // Build list of arguments
-            List<String> pdbArguments = new LinkedList<>();
-            if ( !pdbmsArgs.trim().isEmpty() ) {
-                pdbArguments.addAll( Arrays.asList( pdbmsArgs.split( " " ) ) );
-            }
-            if ( !additionalArguments.trim().isEmpty() ) {
-                pdbArguments.addAll( Arrays.asList( additionalArguments.split( " " ) ) );
-            }
-            if ( configuration.getString( "pcrtl.plugins.purge" ).equals( "onStartup" ) ) {
-                pdbArguments.add( "-resetPlugins" );
+        // Build list of arguments
+        List<String> pdbArguments = new LinkedList<>();
+        if ( !pdbmsArgs.trim().isEmpty() ) {
+            pdbArguments.addAll( Arrays.asList( pdbmsArgs.split( " " ) ) );
+        }
+        if ( !additionalArguments.trim().isEmpty() ) {
+            pdbArguments.addAll( Arrays.asList( additionalArguments.split( " " ) ) );
+        }
+        if ( configuration.getString( "pcrtl.plugins.purge" ).equals( "onStartup" ) ) {
+            pdbArguments.add( "-resetPlugins" );
+        }
+
+        if ( !new File( javaExecutable ).exists() ) {
+            throw new RuntimeException( "The java executable seems not to exist... How did you start this application?!" );
+        }
+
+        if ( !new File( pdbmsJar ).exists() ) {
+            if ( clientCommunicationStream != null ) {
+                clientCommunicationStream.send( "> There is no Polypheny-DB jar file. Trigger an update first." );
             }
+            log.warn( "> There is no Polypheny-DB jar file. Trigger an update first." );
+            NotificationManager.error( "There is no Polypheny-DB JAR file. You need to trigger an update on the dashboard." );
+            return false;
+        }
 
-            if ( !new File( javaExecutable ).exists() ) {
-                throw new RuntimeException( "The java executable seems not to exist... How did you start this application?!" );
+        if ( !new File( logsDir ).exists() ) {
+            if ( !new File( logsDir ).mkdirs() ) {
+                throw new RuntimeException( "Could not create the logs directory." );
             }
+        }
 
-            if ( !new File( pdbmsJar ).exists() ) {
-                if ( clientCommunicationStream != null ) {
-                    clientCommunicationStream.send( "> There is no Polypheny-DB jar file. Trigger an update first." );
-                }
-                log.warn( "> There is no Polypheny-DB jar file. Trigger an update first." );
-                NotificationManager.error( "There is no Polypheny-DB JAR file. You need to trigger an update on the dashboard." );
-                return false;
+        try ( OutputStreamWriter pidWriter = new OutputStreamWriter( new FileOutputStream( pidFile, false ), StandardCharsets.UTF_8 ) ) {
+
+            log.info( "> Starting Polypheny-DB" );
+            if ( clientCommunicationStream != null ) {
+                clientCommunicationStream.send( "> Starting Polypheny-DB" );
             }
 
-            if ( !new File( logsDir ).exists() ) {
-                if ( !new File( logsDir ).mkdirs() ) {
-                    throw new RuntimeException( "Could not create the logs directory." );
-                }
+            PolyphenyDbProcessBuilder processBuilder = PolyphenyDbProcessBuilder.builder()
+                    .withWorkingDir( new File( workingDir ) )
+                    .withJavaExecutable( new File( javaExecutable ) )
+                    .withJavaOptions( javaOptionsFull.toArray( new String[0] ) )
+                    .withClassPath(
+                            new File( pdbmsJar ).getAbsolutePath()
+                            //new File( new File( workingDir ), "config" ).getAbsolutePath() + File.separator + "*",
+                            //new File( new File( workingDir ), "plugins" ).getAbsolutePath() + File.separator + "*"
+                    )
+                    .withMainClass( pdbmsMainClass )
+                    .withArguments( pdbArguments.toArray( new String[0] ) );
+            if ( !pipeOutput ) {
+                // Let the process write directly into the log files. These files are then followed by tailers.
+                processBuilder
+                        .withLogFile( new File( logFile ), false )
+                        .withErrFile( new File( errFile ), false );
             }
+            long spawnTime = System.nanoTime();
+            polyphenyDbProcess = processBuilder.start();
+            Readiness.spawned( polyphenyDbProcess, spawnTime );
+            StartupProfiler.spawned( polyphenyDbProcess, spawnTime );
+            InstanceDiscovery.refresh();
 
-            try ( OutputStreamWriter pidWriter = new OutputStreamWriter( new FileOutputStream( pidFile, false ), StandardCharsets.UTF_8 ) ) {
+            int polyphenyDbProcessId = polyphenyDbProcess.getPid();
+            pidWriter.append( String.valueOf( polyphenyDbProcessId ) );
+            pidWriter.flush();
 
-                log.info( "> Starting Polypheny-DB" );
-                if ( clientCommunicationStream != null ) {
-                    clientCommunicationStream.send( "> Starting Polypheny-DB" );
-                }
+            log.info( "> PID = {}", polyphenyDbProcessId );
+            if ( clientCommunicationStream != null ) {
+                clientCommunicationStream.send( "> PID = " + polyphenyDbProcessId );
+            }
 
-                polyphenyDbProcess = PolyphenyDbProcessBuilder.builder()
-                        .withWorkingDir( new File( workingDir ) )
-                        .withJavaExecutable( new File( javaExecutable ) )
-                        .withJavaOptions( javaOptionsFull.toArray( new String[0] ) )
-                        .withClassPath(
-                                new File( pdbmsJar ).getAbsolutePath()
-                                //new File( new File( workingDir ), "config" ).getAbsolutePath() + File.separator + "*",
-                                //new File( new File( workingDir ), "plugins" ).getAbsolutePath() + File.separator + "*"
-                        )
-                        .withMainClass( pdbmsMainClass )
-                        .withArguments( pdbArguments.toArray( new String[0] ) )
-                        .withLogFile( new File( logFile ), false )
-                        .withErrFile( new File( errFile ), false )
-                        .start();
+            // Create logger
+            final Logger PDB_LOGGER = LoggerFactory.getLogger( "PDB" );
+            List<Consumer<String>> consumers = new ArrayList<>();
+            consumers.add( PDB_LOGGER::info );
+            consumers.add( Supervisor::recordOutput );
+            consumers.add( Readiness::onOutput );
+            consumers.add( StartupProfiler::onOutput );
+            if ( clientCommunicationStream != null ) {
+                consumers.add( clientCommunicationStream::send );
+            }
 
-                int polyphenyDbProcessId = polyphenyDbProcess.getPid();
-                pidWriter.append( String.valueOf( polyphenyDbProcessId ) );
-                pidWriter.flush();
+            stopOutputRedirection();
+            if ( pipeOutput ) {
+                // Drain stdout and stderr ourselves and write them to the log files while passing them to the consumers
+                logPump = ProcessOutputPump.start( "stdout", polyphenyDbProcess.getProcessOutput(), new File( logFile ), consumers );
+                errPump = ProcessOutputPump.start( "stderr", polyphenyDbProcess.getProcessError(), new File( errFile ), consumers );
+            } else {
+                logTailer = LogTailer.tail( new File( logFile ), new LogTailerListener( consumers ) );
+                errTailer = LogTailer.tail( new File( errFile ), new LogTailerListener( consumers ) );
+            }
 
-                log.info( "> PID = {}", polyphenyDbProcessId );
-                if ( clientCommunicationStream != null ) {
-                    clientCommunicationStream.send( "> PID = " + polyphenyDbProcessId );
-                }
+            log.info( "> ... done." );
+            if ( clientCommunicationStream != null ) {
+                clientCommunicationStream.send( "> ... done." );
+            }
 
-                // Create logger
-                final Logger PDB_LOGGER = LoggerFactory.getLogger( "PDB" );
+            return true;
+        } catch ( IOException ex ) {
+            log.error( "Caught exception while starting Polypheny-DB", ex );
+            return false;
+        }
+    }
 
-                if ( logTailer != null ) {
-                    logTailer.close();
-                }
-                if ( clientCommunicationStream != null ) {
-                    logTailer = Tailer.builder()
-                            .setFile( new File( logFile ) )
-                            .setTailerListener( new LogTailerListener( PDB_LOGGER::info, clientCommunicationStream::send ) )
-                            .get();
-                } else {
-                    logTailer = Tailer.builder()
-                            .setFile( new File( logFile ) )
-                            .setTailerListener( new LogTailerListener( PDB_LOGGER::info ) )
-                            .get();
-                }
 
-                if ( errTailer != null ) {
-                    errTailer.close();
-                }
-                if ( clientCommunicationStream != null ) {
-                    errTailer = Tailer.builder()
-                            .setFile( new File( errFile ) )
-                            .setTailerListener( new LogTailerListener( PDB_LOGGER::info, clientCommunicationStream::send ) )
-                            .get();
-                } else {
-                    errTailer = Tailer.builder()
-                            .setFile( new File( errFile ) )
-                            .setTailerListener( new LogTailerListener( PDB_LOGGER::info ) )
-                            .get();
+    /**
+     * Detects the termination of Polypheny-DB which has not been initiated by Control.
+     */
+    private static void watchExit( PolyphenyDbProcess process ) {
+        process.onExit().thenAccept( exitCode -> {
+            if ( polyphenyDbProcess != process ) {
+                // Stopped by Control
+                return;
+            }
+            if ( exitCode == 0 ) {
+                if ( ServiceStatus.transition( State.RUNNING, State.IDLING ) ) {
+                    log.warn( "> Polypheny-DB has terminated unexpectedly (exit code: 0)" );
                 }
+            } else if ( ServiceStatus.transition( State.RUNNING, State.CRASHED ) ) {
+                Supervisor.crashed( process, exitCode );
+            }
+        } );
+    }
 
-                log.info( "> ... done." );
-                if ( clientCommunicationStream != null ) {
-                    clientCommunicationStream.send( "> ... done." );
-                }
 
-                return true;
-            } catch ( IOException ex ) {
-                log.error( "Caught exception while starting Polypheny-DB", ex );
-                return false;
-            }
-        }
+    /**
+     * Sets the status unless Control is in Polyfier mode. In this mode, the Polyfier runner starts, stops and updates
+     * Polypheny-DB itself and the status stays "polyfier".
+     */
+    private static void setStatus( State next ) {
+        ServiceStatus.transition( current -> current == State.POLYFIER ? current : next );
     }
 
 
@@ -314,7 +378,10 @@ public class ServiceManager {
                 if ( clientCommunicationStream != null ) {
                     clientCommunicationStream.send( "> Stopping Polypheny-DB ..." );
                 }
+                setStatus( State.STOPPING );
+                long killStart = System.nanoTime();
                 polyphenyDbProcess.kill();
+                stopKillDuration.recordSince( killStart );
             } else {
                 // already terminated
             }
@@ -326,14 +393,7 @@ public class ServiceManager {
             polyphenyDbProcess = null;
 
             // Stopping std out redirections
-            if ( logTailer != null ) {
-                logTailer.close();
-            }
-            logTailer = null;
-            if ( errTailer != null ) {
-                errTailer.close();
-            }
-            errTailer = null;
+            stopOutputRedirection();
 
             if ( !pidFile.delete() ) {
                 try ( OutputStreamWriter pidWriter = new OutputStreamWriter( new FileOutputStream( pidFile, false ), StandardCharsets.UTF_8 ) ) {
@@ -344,6 +404,8 @@ public class ServiceManager {
                 }
             }
             // delete or emptying was successful
+            setStatus( State.IDLING );
+            Supervisor.stopped();
 
             log.info( "> ... done." );
             if ( clientCommunicationStream != null ) {
@@ -355,6 +417,27 @@ public class ServiceManager {
     }
 
 
+    private static void stopOutputRedirection() {
+        if ( logTailer != null ) {
+            logTailer.close();
+        }
+        logTailer = null;
+        if ( errTailer != null ) {
+            errTailer.close();
+        }
+        errTailer = null;
+        // The pumps keep draining the streams (and writing the log files) until the process has terminated
+        if ( logPump != null ) {
+            logPump.detach();
+        }
+        logPump = null;
+        if ( errPump != null ) {
+            errPump.detach();
+        }
+        errPump = null;
+    }
+
+
     public static boolean restart( final ClientCommunicationStream clientCommunicationStream ) {
         return restart( clientCommunicationStream, true );
     }
@@ -371,18 +454,19 @@ public class ServiceManager {
     public static boolean update( final ClientCommunicationStream clientCommunicationStream ) {
         Config configuration = ConfigManager.getConfig();
         synchronized ( MUTEX ) {
-            try {
-                currentlyUpdating = true;
-                //restorePolyphenyDbProcess();
-                if ( polyphenyDbProcess != null && polyphenyDbProcess.isAlive() ) {
-                    // polypheny-db process running
-                    log.info( "> Stop Polypheny-DB first before updating it." );
-                    if ( clientCommunicationStream != null ) {
-                        clientCommunicationStream.send( "> Stop Polypheny-DB first before updating it." );
-                    }
-                    NotificationManager.error( "Stop Polypheny-DB first before updating it." );
-                    return false;
+            //restorePolyphenyDbProcess();
+            if ( polyphenyDbProcess != null && polyphenyDbProcess.isAlive() ) {
+                // polypheny-db process running
+                log.info( "> Stop Polypheny-DB first before updating it." );
+                if ( clientCommunicationStream != null ) {
+                    clientCommunicationStream.send( "> Stop Polypheny-DB first before updating it." );
                 }
+                NotificationManager.error( "Stop Polypheny-DB first before updating it." );
+                return false;
+            }
+            long updateStart = System.nanoTime();
+            try {
+                setStatus( State.UPDATING );
 
                 String workingDir = configuration.getString( "pcrtl.workingdir" );
                 String builddir = configuration.getString( "pcrtl.builddir" );
@@ -408,12 +492,14 @@ public class ServiceManager {
                     }
                 }
                 if ( clean ) {
+                    long cleanStart = System.nanoTime();
                     log.info( "> Deleting build folder ..." );
                     if ( clientCommunicationStream != null ) {
                         clientCommunicationStream.send( "> Deleting build folder ..." );
                     }
 
                     try {
+                        GradleSessions.closeAll();
                         FileUtils.deleteDirectory( new File( builddir ) );
                         log.info( "> Deleting build folder ... Done." );
                         if ( clientCommunicationStream != null ) {
@@ -426,6 +512,7 @@ public class ServiceManager {
                             throw new RuntimeException( "Could not delete build folder " + new File( builddir ).getAbsolutePath() );
                         }
                     }
+                    updateCleanDuration.recordSince( cleanStart );
                 }
 
                 if ( !new File( builddir ).exists() ) {
@@ -434,19 +521,27 @@ public class ServiceManager {
                     }
                 }
 
+                BuildCache.reset();
                 log.info( "> Updating Polypheny ..." );
                 if ( clientCommunicationStream != null ) {
                     clientCommunicationStream.send( "> Updating Polypheny-DB ..." );
                 }
 
-                boolean installedUI = false;
-                if ( buildMode.equals( "both" ) || buildMode.equals( "pui" ) ) {
-                    installedUI = installUi( clientCommunicationStream, configuration );
-                }
-                if ( buildMode.equals( "both" ) || buildMode.equals( "pdb" ) || installedUI ) {
-                    buildPdb( clientCommunicationStream, configuration, installedUI );
+                if ( buildMode.equals( "both" ) && configuration.getBoolean( "pcrtl.update.parallel" ) ) {
+                    updateInParallel( clientCommunicationStream, configuration );
+                } else {
+                    boolean installedUI = false;
+                    if ( buildMode.equals( "both" ) || buildMode.equals( "pui" ) ) {
+                        long uiStart = System.nanoTime();
+                        installedUI = installUi( clientCommunicationStream, configuration );
+                        updateUiDuration.recordSince( uiStart );
+                    }
+                    if ( buildMode.equals( "both" ) || buildMode.equals( "pdb" ) || installedUI ) {
+                        buildPdb( clientCommunicationStream, configuration, pullPdb( clientCommunicationStream, configuration ), installedUI );
+                    }
                 }
 
+                BuildCache.report( clientCommunicationStream );
                 if ( clientCommunicationStream != null ) {
                     log.info( "> Updating Polypheny ... finished." );
                     clientCommunicationStream.send( "********************************************************" );
@@ -455,15 +550,91 @@ public class ServiceManager {
                     NotificationManager.info( "Polypheny-DB has successfully been built!" );
                 }
 
+                updateDuration.recordSince( updateStart );
                 return true;
             } finally {
-                currentlyUpdating = false;
+                setStatus( State.IDLING );
+                GradleSessions.release();
+                VersionCache.invalidate();
             }
         }
     }
 
 
-    private static void buildPdb( final ClientCommunicationStream clientCommunicationStream, Config configuration, boolean forceUiBuild ) {
+    // Updates Polypheny-UI and Polypheny-DB in two lanes: the UI is pulled and installed while Polypheny-DB is pulled and
+    // (if it is going to be built anyway) its modules are compiled. The final build of Polypheny-DB waits for both lanes.
+    private static void updateInParallel( final ClientCommunicationStream clientCommunicationStream, Config configuration ) {
+        long start = System.nanoTime();
+        // Both lanes return whether they require (re)building Polypheny-DB and their duration
+        CompletableFuture<long[]> uiLane = CompletableFuture.supplyAsync( () -> {
+            long uiStart = System.nanoTime();
+            boolean installed = installUi( clientCommunicationStream, configuration );
+            updateUiDuration.recordSince( uiStart );
+            return new long[]{ installed ? 1 : 0, System.nanoTime() - uiStart };
+        }, updateLanes );
+        CompletableFuture<long[]> pdbLane = CompletableFuture.supplyAsync( () -> {
+            long pdbStart = System.nanoTime();
+            boolean requiresBuild = pullPdb( clientCommunicationStream, configuration );
+            if ( requiresBuild || !new File( configuration.getString( "pcrtl.pdbms.oldjarfile" ) ).exists() ) {
+                precompilePdb( clientCommunicationStream, configuration );
+            }
+            return new long[]{ requiresBuild ? 1 : 0, System.nanoTime() - pdbStart };
+        }, updateLanes );
+
+        long[] uiResult;
+        long[] pdbResult;
+        try {
+            uiResult = uiLane.join();
+            pdbResult = pdbLane.join();
+        } catch ( CompletionException e ) {
+            // Let the other lane finish before giving up, both work on the build folder
+            CompletableFuture.allOf( uiLane, pdbLane ).exceptionally( t -> null ).join();
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException( "Exception while updating Polypheny", e.getCause() );
+        }
+        long lanesTime = System.nanoTime() - start;
+
+        long buildStart = System.nanoTime();
+        buildPdb( clientCommunicationStream, configuration, pdbResult[0] == 1, uiResult[0] == 1 );
+        long buildTime = System.nanoTime() - buildStart;
+
+        // Time saved compared to running the lanes one after the other
+        long saved = uiResult[1] + pdbResult[1] - lanesTime;
+        String message = String.format( Locale.ROOT, "> Updated Polypheny-UI (%.1f s) and Polypheny-DB (%.1f s + %.1f s final build) in parallel, saving %.1f s.",
+                uiResult[1] / 1e9, pdbResult[1] / 1e9, buildTime / 1e9, Math.max( 0, saved ) / 1e9 );
+        log.info( message );
+        if ( clientCommunicationStream != null ) {
+            clientCommunicationStream.send( message );
+        }
+    }
+
+
+    // Compiles the modules of Polypheny-DB except for those bundling the UI, which have to wait for the UI to be installed.
+    private static void precompilePdb( final ClientCommunicationStream clientCommunicationStream, Config configuration ) {
+        File pdbBuildDir = new File( configuration.getString( "pcrtl.pdbbuilddir" ) );
+        log.info( "> Compiling Polypheny-DB modules ..." );
+        if ( clientCommunicationStream != null ) {
+            clientCommunicationStream.send( "> Compiling Polypheny-DB modules ..." );
+        }
+        try {
+            List<String> tasks = BuildPlan.getPrecompileTasks( pdbBuildDir, configuration.getStringList( "pcrtl.build.uiprojects" ) );
+            runGradle( pdbBuildDir, clientCommunicationStream, tasks, BuildPlan.ARGUMENTS );
+        } catch ( GradleConnectionException e ) {
+            // Not fatal, the final build compiles whatever is missing
+            log.warn( "Compiling the modules of Polypheny-DB failed", e );
+        }
+        log.info( "> Compiling Polypheny-DB modules ... finished." );
+        if ( clientCommunicationStream != null ) {
+            clientCommunicationStream.send( "> Compiling Polypheny-DB modules ... finished." );
+        }
+    }
+
+
+    // Pulls (or clones) the repository of Polypheny-DB and moves the current jar aside. Returns whether a build is required.
+    private static boolean pullPdb( final ClientCommunicationStream clientCommunicationStream, Config configuration ) {
+        long pullStart = System.nanoTime();
         boolean requiresBuild = false;
 
         File pdbBuildDir = new File( configuration.getString( "pcrtl.pdbbuilddir" ) );
@@ -496,6 +667,7 @@ public class ServiceManager {
             if ( pdbBuildDir.exists() ) {
                 Git git = Git.open( pdbBuildDir );
                 if ( !validateGitRepository( git.getRepository() ) ) {
+                    GradleSessions.close( pdbBuildDir );
                     if ( !pdbBuildDir.delete() ) {
                         throw new RuntimeException( "Unable to delete invalid PDB build folder" );
                     }
@@ -517,6 +689,7 @@ public class ServiceManager {
         }
         try {
             Git git = Git.open( pdbBuildDir );
+            GitSync.prepare( git, branch );
             if ( !existsRemoteBranchWithName( git, branch ) ) {
                 throw new RuntimeException( "There is no branch with the name " + branch + " on remote of the Polypheny-DB repo!" );
             }
@@ -537,7 +710,7 @@ public class ServiceManager {
                         .call();
             }
             git.checkout().setName( branch ).call();
-            git.pull().call();
+            GitSync.pull( git, branch );
             String newCommitId = git.getRepository().resolve( Constants.HEAD ).getName();
             requiresBuild |= !oldCommitId.equals( newCommitId );
             git.close();
@@ -548,6 +721,15 @@ public class ServiceManager {
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Pulling Polypheny-DB repository ... finished." );
         }
+        updatePullDuration.recordSince( pullStart );
+        return requiresBuild;
+    }
+
+
+    private static void buildPdb( final ClientCommunicationStream clientCommunicationStream, Config configuration, boolean requiresBuild, boolean forceUiBuild ) {
+        File pdbBuildDir = new File( configuration.getString( "pcrtl.pdbbuilddir" ) );
+        File oldJar = new File( configuration.getString( "pcrtl.pdbms.oldjarfile" ) );
+        File jar = new File( configuration.getString( "pcrtl.pdbms.jarfile" ) );
 
         // Check if we need to build
         if ( !requiresBuild && !forceUiBuild && oldJar.exists() ) {
@@ -572,13 +754,7 @@ public class ServiceManager {
             if ( clientCommunicationStream != null ) {
                 clientCommunicationStream.send( "> Force updating Polypheny-UI ..." );
             }
-            try ( ProjectConnection connection = GradleConnector.newConnector().forProjectDirectory( pdbBuildDir ).connect() ) {
-                BuildLauncher buildLauncher = connection.newBuild()
-                        .setStandardOutput( null )
-                        .setStandardError( System.err )
-                        .forTasks( ":webui:clean" );
-                buildLauncher.run();
-            }
+            runGradle( pdbBuildDir, null, List.of( ":webui:clean" ) );
             log.info( "> Force updating Polypheny-UI ... finished." );
             if ( clientCommunicationStream != null ) {
                 clientCommunicationStream.send( "> Force updating Polypheny-UI ... finished." );
@@ -586,40 +762,45 @@ public class ServiceManager {
         }
 
         // Build
+        long buildStart = System.nanoTime();
         log.info( "> Building Polypheny-DB ..." );
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Building Polypheny-DB ..." );
         }
-        try ( ProjectConnection connection = GradleConnector.newConnector().forProjectDirectory( pdbBuildDir ).connect() ) {
-            BuildLauncher buildLauncher = connection.newBuild()
-                    .setStandardOutput( null )
-                    .setStandardError( System.err )
-                    .forTasks( "build" )
-                    .withArguments( "-x", "test", "-x", "licensee" );
-
-            if ( clientCommunicationStream != null ) {
-                buildLauncher.addProgressListener( event -> clientCommunicationStream.send( event.getDisplayName() ), OperationType.TASK );
+        BuildPlan plan = BuildPlan.get( configuration.getString( "pcrtl.build.plan" ) );
+        if ( plan == BuildPlan.MINIMAL ) {
+            // Only the selection of the tasks falls back to the full build. The selected tasks are taken from the model of
+            // the project, so a failure while running them is a genuine build failure which the full build would repeat.
+            List<String> tasks;
+            try {
+                tasks = BuildPlan.getMinimalTasks( pdbBuildDir, configuration.getStringList( "pcrtl.build.plugintasks" ) );
+            } catch ( GradleConnectionException e ) {
+                log.warn( "Unable to determine the tasks of the minimal build of Polypheny-DB", e );
+                tasks = null;
+            }
+            if ( tasks == null || tasks.isEmpty() ) {
+                String reason = tasks == null ? "Unable to determine the tasks" : "No plugin tasks found";
+                log.info( "> {} for the minimal build, falling back to the full build ...", reason );
+                if ( clientCommunicationStream != null ) {
+                    clientCommunicationStream.send( "> " + reason + " for the minimal build, falling back to the full build ..." );
+                }
+                plan = BuildPlan.FULL;
+            } else {
+                runGradle( pdbBuildDir, clientCommunicationStream, tasks, BuildPlan.ARGUMENTS );
             }
-            buildLauncher.run();
         }
-        try ( ProjectConnection connection = GradleConnector.newConnector().forProjectDirectory( pdbBuildDir ).connect() ) {
+        if ( plan == BuildPlan.FULL ) {
+            runGradle( pdbBuildDir, clientCommunicationStream, List.of( "build" ), BuildPlan.ARGUMENTS );
             // Build shadow jar again to include plugins (not a nice solution, but it takes time till this is fixed on all branches)
-            BuildLauncher buildLauncher = connection.newBuild()
-                    .setStandardOutput( null )
-                    .setStandardError( System.err )
-                    .forTasks( "dbms:shadowJar" )
-                    .withArguments( "-x", "test", "-x", "licensee" );
-
-            if ( clientCommunicationStream != null ) {
-                buildLauncher.addProgressListener( event -> clientCommunicationStream.send( event.getDisplayName() ), OperationType.TASK );
-            }
-            buildLauncher.run();
+            runGradle( pdbBuildDir, clientCommunicationStream, List.of( BuildPlan.JAR_TASK ), BuildPlan.ARGUMENTS );
         }
 
-        log.info( "> Building Polypheny-DB ... finished." );
+        String buildTime = String.format( Locale.ROOT, "%.1f", (System.nanoTime() - buildStart) / 1e9 );
+        log.info( "> Building Polypheny-DB ... finished ({} build plan, {} s).", plan.name().toLowerCase( Locale.ROOT ), buildTime );
         if ( clientCommunicationStream != null ) {
-            clientCommunicationStream.send( "> Building Polypheny-DB ... finished." );
+            clientCommunicationStream.send( "> Building Polypheny-DB ... finished (" + plan.name().toLowerCase( Locale.ROOT ) + " build plan, " + buildTime + " s)." );
         }
+        updateBuildDuration.recordSince( buildStart );
 
         // Move jar to working dir
         File dbmsJarFolder = new File( pdbBuildDir, "dbms" + File.separator + "build" + File.separator + "libs" );
@@ -663,25 +844,25 @@ public class ServiceManager {
     public static void clonePdbRepository( ClientCommunicationStream clientCommunicationStream, Config configuration ) {
         File pdbBuildDir = new File( configuration.getString( "pcrtl.pdbbuilddir" ) );
         String repo = configuration.getString( "pcrtl.pdbms.repo" );
+        String branch = configuration.getString( "pcrtl.pdbms.branch" );
 
+        long cloneStart = System.nanoTime();
         log.info( "> Cloning Polypheny-DB repository ..." );
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Cloning Polypheny-DB repository ..." );
         }
         try {
-            final Git git = Git.cloneRepository()
-                    .setURI( repo )
-                    .setDirectory( pdbBuildDir )
-                    .setBranch( "master" )
-                    .call();
+            final Git git = GitSync.cloneRepository( repo, pdbBuildDir, branch );
             git.close();
         } catch ( GitAPIException e ) {
             throw new RuntimeException( "Exception while cloning Polypheny-DB repo", e );
         }
-        log.info( "> Cloning Polypheny-DB repository ... finished." );
+        String cloneInfo = getCloneInfo( cloneStart );
+        log.info( "> Cloning Polypheny-DB repository ... finished ({}).", cloneInfo );
         if ( clientCommunicationStream != null ) {
-            clientCommunicationStream.send( "> Cloning Polypheny-DB repository ... finished." );
+            clientCommunicationStream.send( "> Cloning Polypheny-DB repository ... finished (" + cloneInfo + ")." );
         }
+        VersionCache.invalidate();
     }
 
 
@@ -699,6 +880,7 @@ public class ServiceManager {
             if ( uiBuildDir.exists() ) {
                 Git git = Git.open( uiBuildDir );
                 if ( !validateGitRepository( git.getRepository() ) ) {
+                    GradleSessions.close( uiBuildDir );
                     if ( !uiBuildDir.delete() ) {
                         throw new RuntimeException( "Unable to delete invalid UI build folder" );
                     }
@@ -721,6 +903,7 @@ public class ServiceManager {
         }
         try {
             Git git = Git.open( uiBuildDir );
+            GitSync.prepare( git, branch );
             if ( !existsRemoteBranchWithName( git, branch ) ) {
                 if ( clientCommunicationStream != null ) {
                     clientCommunicationStream.send( "> There is no branch with the name " + branch + " on remote of the Polypheny-UI repo! You can change the repo in the settings." );
@@ -744,7 +927,7 @@ public class ServiceManager {
                         .call();
             }
             git.checkout().setName( branch ).call();
-            git.pull().call();
+            GitSync.pull( git, branch );
             String newCommitId = git.getRepository().resolve( Constants.HEAD ).getName();
             requiresInstall |= !oldCommitId.equals( newCommitId );
             git.close();
@@ -771,13 +954,7 @@ public class ServiceManager {
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Cleaning Polypheny-UI ..." );
         }
-        try ( ProjectConnection connection = GradleConnector.newConnector().forProjectDirectory( uiBuildDir ).connect() ) {
-            BuildLauncher buildLauncher = connection.newBuild()
-                    .setStandardOutput( null )
-                    .setStandardError( System.err )
-                    .forTasks( "clean" );
-            buildLauncher.run();
-        }
+        runGradle( uiBuildDir, null, List.of( "clean" ) );
         log.info( "> Cleaning Polypheny-UI ... finished." );
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Cleaning Polypheny-UI ... finished." );
@@ -788,18 +965,7 @@ public class ServiceManager {
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Installing Polypheny-UI ..." );
         }
-        try ( ProjectConnection connection = GradleConnector.newConnector().forProjectDirectory( uiBuildDir ).connect() ) {
-            BuildLauncher buildLauncher = connection.newBuild()
-                    .setStandardOutput( null )
-                    .setStandardError( System.err )
-                    .forTasks( "install" )
-                    .withArguments( "-x", "test" );
-
-            if ( clientCommunicationStream != null ) {
-                buildLauncher.addProgressListener( event -> clientCommunicationStream.send( event.getDisplayName() ), OperationType.TASK );
-            }
-            buildLauncher.run();
-        }
+        runGradle( uiBuildDir, clientCommunicationStream, List.of( "install" ), "-x", "test" );
         log.info( "> Installing Polypheny-UI ... finished." );
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Installing Polypheny-UI ... finished." );
@@ -808,29 +974,50 @@ public class ServiceManager {
     }
 
 
+    // Runs the tasks on the (shared) connection to the Gradle project. The progress is reported to the stream if it is not null.
+    private static void runGradle( File projectDir, final ClientCommunicationStream clientCommunicationStream, List<String> tasks, String... arguments ) {
+        ProjectConnection connection = GradleSessions.get( projectDir );
+        BuildLauncher buildLauncher = connection.newBuild()
+                .setStandardOutput( null )
+                .setStandardError( System.err )
+                .forTasks( tasks );
+        BuildCache.configure( buildLauncher, projectDir, Arrays.asList( arguments ) );
+
+        if ( clientCommunicationStream != null ) {
+            buildLauncher.addProgressListener( event -> clientCommunicationStream.send( event.getDisplayName() ), OperationType.TASK );
+        }
+        buildLauncher.run();
+    }
+
+
     public static void clonePuiRepository( ClientCommunicationStream clientCommunicationStream, Config configuration ) {
         String buildDir = configuration.getString( "pcrtl.builddir" );
         String repo = configuration.getString( "pcrtl.ui.repo" );
         File uiBuildDir = new File( buildDir, "ui" );
+        String branch = configuration.getString( "pcrtl.ui.branch" );
 
+        long cloneStart = System.nanoTime();
         log.info( "> Cloning Polypheny-UI repository ..." );
         if ( clientCommunicationStream != null ) {
             clientCommunicationStream.send( "> Cloning Polypheny-UI repository ..." );
         }
         try {
-            final Git git = Git.cloneRepository()
-                    .setURI( repo )
-                    .setDirectory( uiBuildDir )
-                    .setBranch( "master" )
-                    .call();
+            final Git git = GitSync.cloneRepository( repo, uiBuildDir, branch );
             git.close();
         } catch ( GitAPIException e ) {
             throw new RuntimeException( "Exception while cloning Polypheny-UI repo", e );
         }
-        log.info( "> Cloning Polypheny-UI repository ... finished." );
+        String cloneInfo = getCloneInfo( cloneStart );
+        log.info( "> Cloning Polypheny-UI repository ... finished ({}).", cloneInfo );
         if ( clientCommunicationStream != null ) {
-            clientCommunicationStream.send( "> Cloning Polypheny-UI repository ... finished." );
+            clientCommunicationStream.send( "> Cloning Polypheny-UI repository ... finished (" + cloneInfo + ")." );
         }
+        VersionCache.invalidate();
+    }
+
+
+    private static String getCloneInfo( long cloneStart ) {
+        return String.format( Locale.ROOT, "%s clone, %.1f s", GitSync.getMode().name().toLowerCase( Locale.ROOT ), (System.nanoTime() - cloneStart) / 1e9 );
     }
 
 
@@ -905,97 +1092,50 @@ public class ServiceManager {
 
 
     public static Map<String, String> getVersion() {
-        Config configuration = ConfigManager.getConfig();
-        String buildDir = configuration.getString( "pcrtl.builddir" );
-        File pdbBuildDir = new File( buildDir, "pdb" );
-        File puiBuildDir = new File( buildDir, "ui" );
+        return VersionCache.getVersion();
+    }
 
-        Map<String, String> map = new HashMap<>();
 
-        // Get PDB branch and commit
-        try {
-            Git git = null;
-            if ( pdbBuildDir.exists() ) {
-                git = Git.open( pdbBuildDir );
-                if ( !validateGitRepository( git.getRepository() ) ) {
-                    git.close();
-                    git = null;
-                }
-            }
+    /**
+     * @return Whether the repositories might be modified at the moment (i.e., by an update or the Polyfier runner).
+     */
+    static boolean isCurrentlyUpdating() {
+        State state = ServiceStatus.get();
+        return state == State.UPDATING || state == State.POLYFIER;
+    }
 
-            if ( git != null ) {
-                git.fetch().call();
-                map.put( "pdb-branch", git.getRepository().getBranch() );
-                if ( git.getRepository().resolve( Constants.HEAD ) != null ) {
-                    map.put( "pdb-commit", git.getRepository().resolve( Constants.HEAD ).getName() );
-                    map.put( "pdb-behind", "" + BranchTrackingStatus.of( git.getRepository(), git.getRepository().getBranch() ).getBehindCount() );
-                } else {
-                    map.put( "pdb-commit", "--------" );
-                    map.put( "pdb-behind", "0" );
-                }
-                git.close();
-            } else {
-                map.put( "pdb-branch", "Unknown" );
-                map.put( "pdb-commit", "--------" );
-                map.put( "pdb-behind", "0" );
-            }
-        } catch ( IOException | GitAPIException e ) {
-            if ( currentlyUpdating ) {
-                // ignore exceptions while updating repo
-            } else {
-                log.error( "Error while retrieving pdb version", e );
-            }
-        }
 
-        // Get PUI branch and commit
-        try {
-            Git git = null;
-            if ( puiBuildDir.exists() ) {
-                git = Git.open( puiBuildDir );
-                if ( !validateGitRepository( git.getRepository() ) ) {
-                    git.close();
-                    git = null;
-                }
-            }
+    public static boolean isPolyfierMode() {
+        return ServiceStatus.get() == State.POLYFIER;
+    }
 
-            if ( git != null ) {
-                git.fetch().call();
-                map.put( "pui-branch", git.getRepository().getBranch() );
-                if ( git.getRepository().resolve( Constants.HEAD ) != null ) {
-                    map.put( "pui-commit", git.getRepository().resolve( Constants.HEAD ).getName() );
-                    map.put( "pui-behind", "" + BranchTrackingStatus.of( git.getRepository(), git.getRepository().getBranch() ).getBehindCount() );
-                } else {
-                    map.put( "pui-commit", "--------" );
-                    map.put( "pui-behind", "0" );
-                }
-                git.close();
-            } else {
-                map.put( "pui-branch", "Unknown" );
-                map.put( "pui-commit", "--------" );
-                map.put( "pui-behind", "0" );
-            }
-        } catch ( IOException | GitAPIException e ) {
-            if ( currentlyUpdating ) {
-                // ignore exceptions while updating repo
-            } else {
-                log.error( "Error while retrieving pui version", e );
-            }
-        }
 
-        return map;
+    /**
+     * @return Whether Polyfier mode has been entered. This is only possible if Polypheny-DB is not running.
+     */
+    static boolean enterPolyfierMode() {
+        return ServiceStatus.transition( State.IDLING, State.POLYFIER ) || ServiceStatus.transition( State.CRASHED, State.POLYFIER );
     }
 
 
-    public static Object getStatus() {
-        if ( polyfierMode ) {
-            return "polyfier";
-        } else if ( polyphenyDbProcess != null && polyphenyDbProcess.isAlive() ) {
-            return "running";
-        } else if ( currentlyUpdating ) {
-            return "updating";
-        } else {
-            return "idling";
-        }
+    static void leavePolyfierMode() {
+        PolyphenyDbProcess process = polyphenyDbProcess;
+        boolean running = process != null && process.isAlive();
+        ServiceStatus.transition( State.POLYFIER, running ? State.RUNNING : State.IDLING );
+    }
+
+
+    /**
+     * @return The PID of the running Polypheny-DB instance managed by Control or -1 if there is none
+     */
+    static int getPolyphenyDbPid() {
+        PolyphenyDbProcess process = polyphenyDbProcess;
+        return process != null && process.isAlive() ? process.getPid() : -1;
+    }
+
+
+    public static String getStatus() {
+        return ServiceStatus.get().getName();
     }
 
 
@@ -1003,25 +1143,11 @@ public class ServiceManager {
         if ( SystemUtils.IS_OS_WINDOWS ) {
             throw new RuntimeException( "This operation is not supported on Windows" );
         }
-        try {
-            List<Integer> pids = new ArrayList<>();
-            Process process = Runtime.getRuntime().exec( "ps aux|grep org.polypheny.db.PolyphenyDb|grep -v grep|awk '{print $2}'" );
-            try ( BufferedReader input = new BufferedReader( new InputStreamReader( process.getInputStream() ) ) ) {
-                String line;
-                while ( (line = input.readLine()) != null ) {
-                    int id = Integer.parseInt( line );
-                    if ( polyphenyDbProcess != null && id != polyphenyDbProcess.getPid() ) {
-                        log.warn( "There is a running Polypheny instance, but it has a unknown PID: {}", id );
-                    }
-                    pids.add( id );
-                }
-            } catch ( IOException e ) {
-                throw new RuntimeException( "IOException while checking if there are other instances of Polypheny.", e );
-            }
-            return pids;
-        } catch ( IOException e ) {
-            throw new RuntimeException( "IOException while checking if there are other instances of Polypheny.", e );
+        List<Integer> pids = new ArrayList<>();
+        for ( long pid : InstanceDiscovery.getInstances() ) {
+            pids.add( (int) pid );
         }
+        return pids;
     }
 
 
@@ -1030,13 +1156,25 @@ public class ServiceManager {
             throw new RuntimeException( "This operation is not supported on Windows" );
         }
         List<Integer> pids = getPidOfRunningPolyphenyInstances();
-        if ( polyphenyDbProcess != null ) {
-            pids.remove( Integer.valueOf( polyphenyDbProcess.getPid() ) );
+        PolyphenyDbProcess process = polyphenyDbProcess;
+        if ( process != null ) {
+            pids.remove( Integer.valueOf( process.getPid() ) );
         }
         return pids;
     }
 
 
+    /**
+     * @return The number of Polypheny-DB instances on this host which are not managed by Control or -1 on Windows
+     */
+    public static int getNumberOfOtherRunningPolyphenyInstances() {
+        if ( SystemUtils.IS_OS_WINDOWS ) {
+            return -1;
+        }
+        return getPidOfOtherRunningPolyphenyInstances().size();
+    }
+
+
     private static boolean existsLocalBranchWithName( Git git, String branchName ) throws GitAPIException {
         List<Ref> branches = git.branchList().call();
         for ( Ref ref : branches ) {
@@ -1059,7 +1197,7 @@ public class ServiceManager {
     }
 
 
-    private static boolean validateGitRepository( Repository repo ) {
+    static boolean validateGitRepository( Repository repo ) {
         try {
             if ( !RepositoryCache.FileKey.isGitRepository( repo.getDirectory(), FS.DETECTED ) ) {
                 return false;
@@ -1078,7 +1216,18 @@ public class ServiceManager {
     }
 
 
-    public static List<String> getAvailableBranches( File repo ) {
+    /**
+     * Lists the branches of a repository. Unless all branches are cloned, they are listed from the remote repository.
+     */
+    public static List<String> getAvailableBranches( File repo, String uri ) {
+        if ( GitSync.getMode() != GitSync.Mode.FULL ) {
+            try {
+                return GitSync.listRemoteBranches( uri );
+            } catch ( GitAPIException e ) {
+                log.error( "Exception while getting list of branches", e );
+                return new LinkedList<>();
+            }
+        }
         List<String> branches = new LinkedList<>();
         try {
             Git git = Git.open( repo );
@@ -1098,23 +1247,23 @@ public class ServiceManager {
 
 
     /**
-     *
+     * Forwards the lines of a tailed log file to a set of consumers. The first line is used to report the time it took
+     * from spawning Polypheny-DB until its first output has been received.
      */
-    private static class LogTailerListener implements TailerListener {
+    private static class LogTailerListener implements LogTailer.Listener {
 
         private final List<Consumer<String>> consumers;
-        private Tailer tailer;
+        private LogTailer tailer;
+        private boolean firstLine = true;
 
 
-        @SafeVarargs
-        LogTailerListener( @NonNull final Consumer<String>... consumers ) {
-            this.consumers = new ArrayList<>();
-            this.consumers.addAll( Arrays.asList( consumers ) );
+        LogTailerListener( @NonNull final List<Consumer<String>> consumers ) {
+            this.consumers = new ArrayList<>( consumers );
         }
 
 
         @Override
-        public void init( Tailer tailer ) {
+        public void init( LogTailer tailer ) {
             this.tailer = tailer;
         }
 
@@ -1150,6 +1299,10 @@ public class ServiceManager {
 
         @Override
         public void handle( String s ) {
+            if ( firstLine ) {
+                firstLine = false;
+                log.info( "> First output of Polypheny-DB received after {} ms ({})", tailer.getFirstLineLatency(), tailer.getFile().getName() );
+            }
             for ( Consumer<String> consumer : consumers ) {
                 consumer.accept( s );
             }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * The lifecycle state of the Polypheny-DB instance managed by Control. The state is held in a single atomic reference,
+ * reading it is cheap. Every transition is published to the listeners exactly once, in the order of the transitions.
+ */
+@Slf4j
+public class ServiceStatus {
+
+    private static final AtomicReference<State> state = new AtomicReference<>( State.IDLING );
+    private static final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+
+    public static State get() {
+        return state.get();
+    }
+
+
+    public static void addListener( Consumer<State> listener ) {
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Changes the state if it currently is the expected one.
+     *
+     * @return Whether the state has been changed
+     */
+    static synchronized boolean transition( State expected, State next ) {
+        if ( state.get() != expected ) {
+            return false;
+        }
+        set( next );
+        return true;
+    }
+
+
+    /**
+     * Changes the state according to the given function.
+     *
+     * @return The new state
+     */
+    static synchronized State transition( UnaryOperator<State> function ) {
+        State next = function.apply( state.get() );
+        set( next );
+        return next;
+    }
+
+
+    static synchronized void set( State next ) {
+        State previous = state.getAndSet( next );
+        if ( previous == next ) {
+            return;
+        }
+        log.debug( "Status changed from {} to {}", previous.getName(), next.getName() );
+        for ( Consumer<State> listener : listeners ) {
+            try {
+                listener.accept( next );
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while publishing status change", e );
+            }
+        }
+    }
+
+
+    public enum State {
+        IDLING( "idling" ),
+        STARTING( "starting" ),
+        RUNNING( "running" ),
+        STOPPING( "stopping" ),
+        UPDATING( "updating" ),
+        POLYFIER( "polyfier" ),
+        CRASHED( "crashed" );
+
+        /**
+         * The name used in the HTTP and WebSocket interface.
+         */
+        @Getter
+        private final String name;
+
+
+        State( String name ) {
+            this.name = name;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.typesafe.config.Config;
+import io.javalin.http.Context;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Profiles the startup of Polypheny-DB: the configured phases end with the first output line matching their marker (an
+ * empty marker matches any line, e.g., to end the first phase with the first line of output). The duration of a phase is
+ * measured from the end of the previous phase reached (or from spawning the process). Phases whose marker does not appear
+ * are reported with a duration of -1. The profile of every start is appended, together with the Polypheny-DB commit, to
+ * a history file.
+ */
+@Slf4j
+public class StartupProfiler {
+
+    private static final int MAX_PROFILES = 1000;
+
+    private static final Gson gson = new Gson();
+    private static final List<String> phaseNames = new ArrayList<>();
+    private static final List<Pattern> markers = new ArrayList<>();
+    private static final File historyFile;
+
+    private static Profile current = null;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        for ( Config phase : config.getConfigList( "pcrtl.startup.phases" ) ) {
+            phaseNames.add( phase.getString( "name" ) );
+            String marker = phase.getString( "marker" );
+            markers.add( marker.isEmpty() ? null : Pattern.compile( marker ) );
+        }
+        historyFile = new File( config.getString( "pcrtl.startup.historyfile" ) );
+    }
+
+
+    /**
+     * Called after the process of Polypheny-DB has been spawned.
+     *
+     * @param spawnTime The {@link System#nanoTime()} before spawning the process
+     */
+    static void spawned( PolyphenyDbProcess process, long spawnTime ) {
+        if ( phaseNames.isEmpty() ) {
+            return;
+        }
+        Map<String, String> version = VersionCache.getVersion();
+        Profile profile = new Profile( spawnTime, version.get( "pdb-branch" ), version.get( "pdb-commit" ) );
+        synchronized ( StartupProfiler.class ) {
+            current = profile;
+        }
+        // Persist what has been reached if Polypheny-DB terminates during the startup
+        process.onExit().thenRun( () -> finish( profile ) );
+    }
+
+
+    /**
+     * Checks a line of output of Polypheny-DB for the marker of the next phases.
+     */
+    static void onOutput( String line ) {
+        Profile profile;
+        synchronized ( StartupProfiler.class ) {
+            profile = current;
+        }
+        if ( profile == null ) {
+            return;
+        }
+        boolean complete;
+        synchronized ( profile ) {
+            if ( profile.finished ) {
+                return;
+            }
+            long now = System.nanoTime();
+            for ( int i = profile.reached; i < markers.size(); i++ ) {
+                Pattern marker = markers.get( i );
+                if ( marker == null || marker.matcher( line ).find() ) {
+                    // The phases in between have been skipped
+                    profile.reached = i + 1;
+                    profile.times[i] = now;
+                    break;
+                }
+            }
+            complete = profile.reached == markers.size();
+        }
+        if ( complete ) {
+            finish( profile );
+        }
+    }
+
+
+    private static void finish( Profile profile ) {
+        Map<String, Object> result;
+        synchronized ( profile ) {
+            if ( profile.finished ) {
+                return;
+            }
+            profile.finished = true;
+            if ( profile.reached == 0 ) {
+                return;
+            }
+            result = profile.toMap();
+        }
+        synchronized ( StartupProfiler.class ) {
+            if ( current == profile ) {
+                current = null;
+            }
+            try ( BufferedWriter writer = Files.newBufferedWriter( historyFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND ) ) {
+                writer.write( gson.toJson( result ) );
+                writer.write( '\n' );
+            } catch ( IOException e ) {
+                log.warn( "Unable to persist the startup profile", e );
+            }
+        }
+        log.info( "> Startup profile of Polypheny-DB: {}", result.get( "phases" ) );
+    }
+
+
+    private static synchronized List<Map<String, Object>> readHistory() {
+        ArrayDeque<Map<String, Object>> profiles = new ArrayDeque<>();
+        if ( !historyFile.exists() ) {
+            return new ArrayList<>();
+        }
+        try ( BufferedReader reader = Files.newBufferedReader( historyFile.toPath(), StandardCharsets.UTF_8 ) ) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> profile = gson.fromJson( line, Map.class );
+                    if ( profile != null ) {
+                        if ( profiles.size() >= MAX_PROFILES ) {
+                            profiles.pollFirst();
+                        }
+                        profiles.addLast( profile );
+                    }
+                } catch ( JsonParseException e ) {
+                    // Skip incomplete lines
+                }
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to read the startup profiles", e );
+        }
+        return new ArrayList<>( profiles );
+    }
+
+
+    /**
+     * Returns the phases, the recorded profiles (the oldest first) and the mean durations per commit in the order of their
+     * first start. The mean total is only computed over complete profiles (-1 if there are none), since the others ended
+     * prematurely.
+     */
+    @SuppressWarnings("unchecked")
+    public static void getProfiles( Context ctx ) {
+        List<Map<String, Object>> profiles = readHistory();
+        Map<String, Map<String, Object>> commits = new LinkedHashMap<>();
+        for ( Map<String, Object> profile : profiles ) {
+            Map<String, Object> commit = commits.computeIfAbsent( String.valueOf( profile.get( "commit" ) ), c -> {
+                Map<String, Object> map = new HashMap<>();
+                map.put( "commit", c );
+                map.put( "branch", profile.get( "branch" ) );
+                map.put( "starts", 0 );
+                map.put( "completeStarts", 0 );
+                map.put( "total", 0.0 );
+                map.put( "phases", new HashMap<String, Double>() );
+                map.put( "counts", new HashMap<String, Integer>() );
+                return map;
+            } );
+            commit.put( "starts", (int) commit.get( "starts" ) + 1 );
+            if ( Boolean.TRUE.equals( profile.get( "complete" ) ) ) {
+                commit.put( "completeStarts", (int) commit.get( "completeStarts" ) + 1 );
+                commit.put( "total", (double) commit.get( "total" ) + ((Number) profile.get( "total" )).doubleValue() );
+            }
+            Map<String, Double> phases = (Map<String, Double>) commit.get( "phases" );
+            Map<String, Integer> counts = (Map<String, Integer>) commit.get( "counts" );
+            for ( Map.Entry<String, Object> phase : ((Map<String, Object>) profile.get( "phases" )).entrySet() ) {
+                double duration = ((Number) phase.getValue()).doubleValue();
+                if ( duration >= 0 ) {
+                    phases.merge( phase.getKey(), duration, Double::sum );
+                    counts.merge( phase.getKey(), 1, Integer::sum );
+                }
+            }
+        }
+        // Turn the sums into means
+        for ( Map<String, Object> commit : commits.values() ) {
+            int completeStarts = (int) commit.get( "completeStarts" );
+            commit.put( "total", completeStarts == 0 ? -1 : (double) commit.get( "total" ) / completeStarts );
+            Map<String, Double> phases = (Map<String, Double>) commit.get( "phases" );
+            Map<String, Integer> counts = (Map<String, Integer>) commit.remove( "counts" );
+            phases.replaceAll( ( phase, sum ) -> sum / counts.get( phase ) );
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put( "phases", phaseNames );
+        response.put( "profiles", profiles );
+        response.put( "commits", new ArrayList<>( commits.values() ) );
+        ctx.result( gson.toJson( response ) );
+    }
+
+
+    private static class Profile {
+
+        private final long spawnTime;
+        private final long timestamp = System.currentTimeMillis();
+        private final String branch;
+        private final String commit;
+        private final long[] times = new long[markers.size()];
+        private int reached = 0;
+        private boolean finished = false;
+
+
+        Profile( long spawnTime, String branch, String commit ) {
+            this.spawnTime = spawnTime;
+            this.branch = branch;
+            this.commit = commit;
+        }
+
+
+        Map<String, Object> toMap() {
+            Map<String, Long> phases = new LinkedHashMap<>();
+            long previous = spawnTime;
+            for ( int i = 0; i < times.length; i++ ) {
+                if ( times[i] == 0 ) {
+                    phases.put( phaseNames.get( i ), -1L );
+                } else {
+                    phases.put( phaseNames.get( i ), TimeUnit.NANOSECONDS.toMillis( times[i] - previous ) );
+                    previous = times[i];
+                }
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put( "timestamp", timestamp );
+            map.put( "branch", branch );
+            map.put( "commit", commit );
+            map.put( "complete", reached == times.length );
+            map.put( "total", TimeUnit.NANOSECONDS.toMillis( previous - spawnTime ) );
+            map.put( "phases", phases );
+            return map;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.google.gson.Gson;
+import com.typesafe.config.Config;
+import io.javalin.http.Context;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.control.control.ServiceStatus.State;
+import org.polypheny.control.httpinterface.ClientCommunicationStream;
+
+
+/**
+ * Supervises Polypheny-DB: a crash (i.e., a termination with a non-zero exit code which has not been initiated by Control)
+ * is reported to the listeners together with the last lines of output. If enabled, Polypheny-DB is restarted after a
+ * backoff which grows exponentially with the number of crashes within the crash loop window. If there are more crashes
+ * than the configured limit within this window, it is not restarted anymore.
+ *
+ * For every crash, the silence before it (the time from the last line of output until the termination has been noticed)
+ * and the time it took to recover from it (from the termination until Polypheny-DB has been started again) are recorded.
+ * A long silence indicates that Polypheny-DB has been hanging before it died.
+ */
+@Slf4j
+public class Supervisor {
+
+    private static final Gson gson = new Gson();
+
+    private static final int crashLines;
+    private static final boolean restart;
+    private static final long initialBackoff;
+    private static final long maxBackoff;
+    private static final double multiplier;
+    private static final int crashLoopLimit;
+    private static final long crashLoopWindow;
+
+    private static final ArrayDeque<String> recentOutput = new ArrayDeque<>();
+    private static final ArrayDeque<Long> crashTimes = new ArrayDeque<>();
+    private static final List<Consumer<Map<String, String>>> listeners = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService restarter = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "Supervisor" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private static ScheduledFuture<?> pendingRestart = null;
+    private static long crashedAt = 0;
+
+    private static long crashes = 0;
+    private static long restarts = 0;
+    private static volatile long lastOutputTime = 0;
+    private static long lastSilence = -1;
+    private static long maxSilence = -1;
+    private static long lastTimeToRecover = -1;
+    private static long maxTimeToRecover = -1;
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        crashLines = config.getInt( "pcrtl.supervisor.crashlines" );
+        restart = config.getBoolean( "pcrtl.supervisor.restart" );
+        initialBackoff = config.getDuration( "pcrtl.supervisor.backoff.initial", TimeUnit.MILLISECONDS );
+        maxBackoff = config.getDuration( "pcrtl.supervisor.backoff.max", TimeUnit.MILLISECONDS );
+        multiplier = config.getDouble( "pcrtl.supervisor.backoff.multiplier" );
+        crashLoopLimit = config.getInt( "pcrtl.supervisor.crashloop.limit" );
+        crashLoopWindow = config.getDuration( "pcrtl.supervisor.crashloop.window", TimeUnit.NANOSECONDS );
+    }
+
+
+    /**
+     * Adds a listener which is notified about every crash. The map contains the exit code, the silence before the crash
+     * (ms, -1 if there has been no output), the action taken (none, restart or crashLoop), the backoff (ms) and the last
+     * lines of output.
+     */
+    public static void addListener( Consumer<Map<String, String>> listener ) {
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Keeps the line as part of the most recent output of Polypheny-DB.
+     */
+    static void recordOutput( String line ) {
+        lastOutputTime = System.nanoTime();
+        synchronized ( recentOutput ) {
+            if ( recentOutput.size() >= crashLines ) {
+                recentOutput.pollFirst();
+            }
+            if ( crashLines > 0 ) {
+                recentOutput.addLast( line );
+            }
+        }
+    }
+
+
+    /**
+     * Called before Polypheny-DB is spawned.
+     */
+    static void starting() {
+        synchronized ( recentOutput ) {
+            recentOutput.clear();
+        }
+        lastOutputTime = 0;
+    }
+
+
+    /**
+     * Called after Polypheny-DB has been started (by the supervisor or by a user).
+     */
+    static synchronized void started() {
+        cancelRestart();
+        if ( crashedAt != 0 ) {
+            lastTimeToRecover = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - crashedAt );
+            maxTimeToRecover = Math.max( maxTimeToRecover, lastTimeToRecover );
+            crashedAt = 0;
+            log.info( "Recovered from crash after {} ms", lastTimeToRecover );
+        }
+    }
+
+
+    /**
+     * Called when Polypheny-DB has been stopped by Control. Cancels a pending restart.
+     */
+    static synchronized void stopped() {
+        cancelRestart();
+        crashedAt = 0;
+    }
+
+
+    /**
+     * Called when the process of Polypheny-DB has terminated unexpectedly with a non-zero exit code.
+     */
+    static void crashed( PolyphenyDbProcess process, int exitCode ) {
+        long now = System.nanoTime();
+        long exitTime = process.getExitTime() != 0 ? process.getExitTime() : now;
+        long outputTime = lastOutputTime;
+        long silence = outputTime == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis( Math.max( 0, exitTime - outputTime ) );
+        List<String> lines;
+        synchronized ( recentOutput ) {
+            lines = new ArrayList<>( recentOutput );
+        }
+
+        String action;
+        long backoff = 0;
+        int recentCrashes;
+        synchronized ( Supervisor.class ) {
+            crashes++;
+            lastSilence = silence;
+            maxSilence = Math.max( maxSilence, silence );
+            crashedAt = exitTime;
+            while ( !crashTimes.isEmpty() && now - crashTimes.peekFirst() > crashLoopWindow ) {
+                crashTimes.pollFirst();
+            }
+            crashTimes.addLast( now );
+            recentCrashes = crashTimes.size();
+            if ( !restart ) {
+                action = "none";
+            } else if ( recentCrashes > crashLoopLimit ) {
+                action = "crashLoop";
+            } else {
+                action = "restart";
+                backoff = (long) Math.min( maxBackoff, initialBackoff * Math.pow( multiplier, recentCrashes - 1 ) );
+                cancelRestart();
+                pendingRestart = restarter.schedule( Supervisor::restart, backoff, TimeUnit.MILLISECONDS );
+            }
+        }
+
+        log.warn( "> Polypheny-DB has crashed (exit code: {}, silent for {} ms before)", exitCode, silence );
+        if ( action.equals( "restart" ) ) {
+            log.info( "> Restarting Polypheny-DB in {} ms ...", backoff );
+        } else if ( action.equals( "crashLoop" ) ) {
+            log.error( "> Polypheny-DB has crashed {} times within {} min, not restarting it anymore", recentCrashes, TimeUnit.NANOSECONDS.toMinutes( crashLoopWindow ) );
+        }
+
+        Map<String, String> event = new HashMap<>();
+        event.put( "exitCode", "" + exitCode );
+        event.put( "silence", "" + silence );
+        event.put( "action", action );
+        event.put( "backoff", "" + backoff );
+        event.put( "lines", String.join( "\n", lines ) );
+        for ( Consumer<Map<String, String>> listener : listeners ) {
+            try {
+                listener.accept( event );
+            } catch ( RuntimeException e ) {
+                log.warn( "Exception while publishing crash", e );
+            }
+        }
+    }
+
+
+    private static void restart() {
+        synchronized ( Supervisor.class ) {
+            pendingRestart = null;
+        }
+        if ( ServiceStatus.get() != State.CRASHED ) {
+            // Started, stopped or updated by a user in the meantime
+            return;
+        }
+        log.info( "> Restarting Polypheny-DB after crash ..." );
+        // Like a start by a user, the output is streamed to the dashboards
+        if ( ServiceManager.start( new ClientCommunicationStream( 0, "logOutput" ) ) ) {
+            synchronized ( Supervisor.class ) {
+                restarts++;
+            }
+        } else {
+            log.error( "> Restarting Polypheny-DB after crash has failed" );
+        }
+    }
+
+
+    private static void cancelRestart() {
+        if ( pendingRestart != null ) {
+            pendingRestart.cancel( false );
+            pendingRestart = null;
+        }
+    }
+
+
+    public static synchronized void getStatistics( Context ctx ) {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put( "restartEnabled", restart );
+        statistics.put( "crashes", crashes );
+        statistics.put( "restarts", restarts );
+        statistics.put( "restartPending", pendingRestart != null );
+        statistics.put( "lastSilence", lastSilence );
+        statistics.put( "maxSilence", maxSilence );
+        statistics.put( "lastTimeToRecover", lastTimeToRecover );
+        statistics.put( "maxTimeToRecover", maxTimeToRecover );
+        ctx.result( gson.toJson( statistics ) );
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+
+/**
+ * Caches the version information (branch, commit and number of commits the local branch is behind its remote) of the
+ * Polypheny-DB and Polypheny-UI repositories. Reading the cached version never touches the network: branch and commit
+ * are resolved from the local repositories, the behind count refers to the remote state of the last fetch. In the shallow
+ * clone mode, the number of commits is unknown and a branch which is behind is reported with -1. Fetching is done by a
+ * background task in the configured interval (plus a random jitter). Concurrent refreshes are merged into one.
+ * Listeners are only notified if the version information has changed.
+ */
+@Slf4j
+public class VersionCache {
+
+    private static final AtomicReference<Map<String, String>> current = new AtomicReference<>();
+    private static final AtomicReference<CompletableFuture<Map<String, String>>> runningRefresh = new AtomicReference<>();
+    private static final List<Consumer<Map<String, String>>> listeners = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService fetcher = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "VersionFetcher" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private static boolean started = false;
+
+
+    /**
+     * @return The cached version information. Only resolved from the local repositories if there is none yet.
+     */
+    public static Map<String, String> getVersion() {
+        Map<String, String> version = current.get();
+        if ( version == null ) {
+            version = publish( readVersion( false ) );
+        }
+        return version;
+    }
+
+
+    /**
+     * Re-reads the local state of the repositories, e.g., after they have been updated.
+     */
+    public static void invalidate() {
+        publish( readVersion( false ) );
+    }
+
+
+    /**
+     * Fetches both repositories and updates the version information. If a refresh is already running, its result is
+     * returned instead of starting another one.
+     */
+    public static CompletableFuture<Map<String, String>> refresh() {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> running = runningRefresh.compareAndExchange( null, future );
+        if ( running != null ) {
+            return running;
+        }
+        try {
+            future.complete( publish( readVersion( true ) ) );
+        } catch ( RuntimeException e ) {
+            future.completeExceptionally( e );
+        } finally {
+            runningRefresh.set( null );
+        }
+        return future;
+    }
+
+
+    public static void addListener( Consumer<Map<String, String>> listener ) {
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Starts fetching the repositories in the background.
+     */
+    public static synchronized void start() {
+        if ( started ) {
+            return;
+        }
+        started = true;
+        scheduleRefresh( 0 );
+    }
+
+
+    private static void scheduleRefresh( long delay ) {
+        fetcher.schedule( () -> {
+            try {
+                refresh();
+            } finally {
+                Config config = ConfigManager.getConfig();
+                long interval = config.getDuration( "pcrtl.version.fetch.interval", TimeUnit.MILLISECONDS );
+                long jitter = config.getDuration( "pcrtl.version.fetch.jitter", TimeUnit.MILLISECONDS );
+                scheduleRefresh( interval + (jitter > 0 ? ThreadLocalRandom.current().nextLong( jitter ) : 0) );
+            }
+        }, delay, TimeUnit.MILLISECONDS );
+    }
+
+
+    private static Map<String, String> publish( Map<String, String> version ) {
+        Map<String, String> previous = current.getAndSet( version );
+        if ( !version.equals( previous ) ) {
+            for ( Consumer<Map<String, String>> listener : listeners ) {
+                try {
+                    listener.accept( version );
+                } catch ( RuntimeException e ) {
+                    log.warn( "Exception while publishing version change", e );
+                }
+            }
+        }
+        return version;
+    }
+
+
+    private static Map<String, String> readVersion( boolean fetch ) {
+        Config configuration = ConfigManager.getConfig();
+        String buildDir = configuration.getString( "pcrtl.builddir" );
+        Map<String, String> map = new HashMap<>();
+        readRepository( new File( buildDir, "pdb" ), "pdb", fetch, map );
+        readRepository( new File( buildDir, "ui" ), "pui", fetch, map );
+        return Collections.unmodifiableMap( map );
+    }
+
+
+    private static void readRepository( File dir, String prefix, boolean fetch, Map<String, String> map ) {
+        map.put( prefix + "-branch", "Unknown" );
+        map.put( prefix + "-commit", "--------" );
+        map.put( prefix + "-behind", "0" );
+        if ( !dir.exists() ) {
+            return;
+        }
+        try ( Git git = Git.open( dir ) ) {
+            if ( !ServiceManager.validateGitRepository( git.getRepository() ) ) {
+                return;
+            }
+            // Do not interfere with a running update
+            if ( fetch && !ServiceManager.isCurrentlyUpdating() ) {
+                try {
+                    GitSync.fetch( git, git.getRepository().getBranch() );
+                } catch ( GitAPIException e ) {
+                    log.warn( "Unable to fetch {} repository: {}", prefix, e.getMessage() );
+                }
+            }
+            String branch = git.getRepository().getBranch();
+            map.put( prefix + "-branch", branch );
+            ObjectId head = git.getRepository().resolve( Constants.HEAD );
+            if ( head != null ) {
+                map.put( prefix + "-commit", head.getName() );
+                BranchTrackingStatus trackingStatus = BranchTrackingStatus.of( git.getRepository(), branch );
+                int behind = trackingStatus == null ? 0 : trackingStatus.getBehindCount();
+                if ( behind > 0 && GitSync.getMode() == GitSync.Mode.SHALLOW ) {
+                    // Only the most recent commits are fetched, hence the number of commits is unknown
+                    behind = -1;
+                }
+                map.put( prefix + "-behind", "" + behind );
+            }
+        } catch ( IOException e ) {
+            if ( !ServiceManager.isCurrentlyUpdating() ) {
+                log.error( "Error while retrieving {} version", prefix, e );
+            }
+        }
+    }
+
+}
@@ -32,10 +32,10 @@ public class ClientCommunicationStream {
     public void send( CharSequence csq ) {
         if ( csq == null ) {
             //ClientRegistry.sendMessage( clientId, topic, "null" );
-            ClientRegistry.broadcast( topic, "null" );
+            MessageBatcher.add( topic, "null" );
         } else {
             //ClientRegistry.sendMessage( clientId, topic, csq.toString() );
-            ClientRegistry.broadcast( topic, csq.toString() );
+            MessageBatcher.add( topic, csq.toString() );
         }
     }
 }
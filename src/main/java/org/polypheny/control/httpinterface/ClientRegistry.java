@@ -21,15 +21,30 @@ import com.google.gson.Gson;
 import io.javalin.http.Context;
 import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsConnectContext;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.polypheny.control.client.BinaryProtocol;
 import org.polypheny.control.client.ClientType;
+import org.polypheny.control.control.Metrics;
 import org.polypheny.control.control.ServiceManager;
+import org.slf4j.event.Level;
 
 
 @Slf4j
@@ -40,73 +55,136 @@ class ClientRegistry {
     private static final Map<Session, Client> clientMap = new ConcurrentHashMap<>();
     private static final Map<Integer, Client> reverseClientMap = new ConcurrentHashMap<>();
     private static int nextClientNumber = 1;
+    private static final AtomicBoolean benchmarkerConnected = new AtomicBoolean( false );
+    private static final AtomicInteger otherInstances = new AtomicInteger( 0 );
+    private static final Map<String, Metrics.Counter> broadcastMessages = new ConcurrentHashMap<>();
+
+
+    static {
+        for ( ClientType type : ClientType.values() ) {
+            Metrics.gauge(
+                    "pcrtl_websocket_clients",
+                    "Number of connected WebSocket clients",
+                    () -> clientMap.values().stream().filter( c -> c.getClientType() == type ).count(),
+                    "type", type.name() );
+        }
+    }
 
 
     static void broadcast( String topic, String message ) {
-        clientMap.keySet().stream().filter( Session::isOpen ).forEach( session -> sendMessage( session, topic, message ) );
+        broadcast( OutboundMessage.of( topic, message ) );
     }
 
 
     static void broadcast( String topic, Map<String, String> map ) {
-        clientMap.keySet().stream().filter( Session::isOpen ).forEach( session -> sendMessage( session, topic, map ) );
+        broadcast( OutboundMessage.of( topic, map ) );
     }
 
 
-    static void sendMessage( int clientId, String topic, String message ) {
-        Session session = reverseClientMap.get( clientId ).getSession();
-        sendMessage( session, topic, message );
+    static void broadcast( String topic, List<String> lines ) {
+        broadcast( OutboundMessage.of( topic, lines ) );
     }
 
 
-    static void sendMessage( int clientId, String topic, Map<String, String> msgMap ) {
-        Session session = reverseClientMap.get( clientId ).getSession();
-        sendMessage( session, topic, msgMap );
+    // Only enqueues the message, the actual sending happens on the sender threads of the clients. Clients not subscribed
+    // to the message are skipped before anything is serialized.
+    private static void broadcast( OutboundMessage message ) {
+        broadcastMessages.computeIfAbsent( message.getTopic(), topic -> Metrics.counter(
+                "pcrtl_broadcast_messages_total",
+                "Number of messages broadcast to the WebSocket clients",
+                "topic", topic ) ).inc();
+        for ( Client client : clientMap.values() ) {
+            if ( client.getSession().isOpen() ) {
+                client.deliver( message );
+            }
+        }
     }
 
 
-    private static void sendMessage( Session session, String topic, String message ) {
-        Client client = clientMap.get( session );
-        Map<String, String> map = new HashMap<>();
-        map.put( topic, message );
-        try {
-            log.debug( "Send message to client {}: topic: {} | message: {}", client.getClientId(), topic, message );
-            session.getRemote().sendString( String.valueOf( gson.toJson( map ) ) );
-        } catch ( Exception e ) {
-            log.debug( "Exception thrown while sending message to client {}", client.getClientId(), e );
-        }
+    static void sendMessage( int clientId, String topic, String message ) {
+        reverseClientMap.get( clientId ).deliver( OutboundMessage.of( topic, message ) );
     }
 
 
-    private static void sendMessage( Session session, String topic, Map<String, String> msgMap ) {
-        Client client = clientMap.get( session );
-        Map<String, Map<String, String>> map = new HashMap<>();
-        map.put( topic, msgMap );
-        try {
-            log.debug( "Send message to client {}: topic: {} | message: (MAP)", client.getClientId(), topic );
-            session.getRemote().sendString( String.valueOf( gson.toJson( map ) ) );
-        } catch ( Exception e ) {
-            log.debug( "Exception thrown while sending message to client {}", client.getClientId(), e );
-        }
+    static void sendMessage( int clientId, String topic, Map<String, String> msgMap ) {
+        reverseClientMap.get( clientId ).deliver( OutboundMessage.of( topic, msgMap ) );
     }
 
 
     static synchronized void addClient( WsConnectContext ctx ) {
         int cid = nextClientNumber++;
-        Client client = new Client( ctx.session, cid );
-        clientMap.put( ctx.session, client );
-        reverseClientMap.put( cid, client );
-        sendMessage( cid, "clientId", "" + cid );
-        log.info( "Registered client {} from IP {}", cid, ctx.session.getRemoteAddress() );
-        sendMessage( cid, "status", "" + ServiceManager.getStatus() );
+        boolean binary = BinaryProtocol.BINARY.equals( ctx.queryParam( BinaryProtocol.QUERY_PARAMETER ) );
+        Client client = new Client( ctx.session, cid, binary );
+        // Clients can subscribe to topics when connecting, so that they do not receive a replay of other topics
+        String topics = ctx.queryParam( "topics" );
+        if ( topics != null ) {
+            client.setSubscription( Subscription.ALL.withTopics( parseTopics( topics ) ) );
+        }
+        // Replay the recent output to the new client before it receives any live output. Topics the client is not
+        // subscribed to are skipped.
+        MessageBatcher.registerClient( () -> {
+            clientMap.put( ctx.session, client );
+            reverseClientMap.put( cid, client );
+            sendMessage( cid, "clientId", "" + cid );
+        }, ( topic, lines ) -> client.deliver( OutboundMessage.of( topic, lines ) ) );
+        log.info( "Registered client {} from IP {} (protocol: {})", cid, ctx.session.getRemoteAddress(), binary ? "binary" : "json" );
+        sendMessage( cid, "status", ServiceManager.getStatus() );
         sendMessage( cid, "benchmarkerConnected", "" + ClientRegistry.getBenchmarkerConnected() );
         sendMessage( cid, "version", ServiceManager.getVersion() );
+        sendMessage( cid, "numberOfOtherRunningPolyphenyInstances", "" + otherInstances.get() );
     }
 
 
     static void removeClient( WsCloseContext closeContext ) {
         Client client = clientMap.remove( closeContext.session );
         reverseClientMap.remove( client.clientId );
+        client.getQueue().close();
         log.info( "Removed client {} from IP {}", client.clientId, closeContext.session.getRemoteAddress() );
+        updateBenchmarkerConnected();
+    }
+
+
+    /**
+     * Sends a ping frame to every client. This keeps the connections open without sending any messages.
+     */
+    static void ping() {
+        for ( Client client : clientMap.values() ) {
+            if ( client.getSession().isOpen() ) {
+                try {
+                    client.getSession().getRemote().sendPing( ByteBuffer.allocate( 0 ), WriteCallback.NOOP );
+                } catch ( Exception e ) {
+                    log.debug( "Exception while sending ping to client {}", client.getClientId(), e );
+                }
+            }
+        }
+    }
+
+
+    // Broadcasts whether a benchmarker is connected (for switching the background color), but only if this has changed.
+    private static void updateBenchmarkerConnected() {
+        boolean connected = (boolean) getBenchmarkerConnected();
+        if ( benchmarkerConnected.getAndSet( connected ) != connected ) {
+            broadcast( "benchmarkerConnected", "" + connected );
+        }
+    }
+
+
+    // Broadcasts the number of other Polypheny instances on this host (for switching the background color), but only if
+    // this has changed.
+    static void updateOtherInstances() {
+        int count = ServiceManager.getNumberOfOtherRunningPolyphenyInstances();
+        if ( otherInstances.getAndSet( count ) != count ) {
+            broadcast( "numberOfOtherRunningPolyphenyInstances", "" + count );
+        }
+    }
+
+
+    /**
+     * Resends the status and whether a benchmarker is connected to all clients.
+     */
+    static void resync() {
+        broadcast( "status", ServiceManager.getStatus() );
+        broadcast( "benchmarkerConnected", "" + benchmarkerConnected.get() );
     }
 
 
@@ -128,12 +206,123 @@ class ClientRegistry {
             } else {
                 log.error( "Unknown client id: {}", cid );
             }
+            updateBenchmarkerConnected();
         } else {
             log.error( "Illegal request for setting client type" );
         }
     }
 
 
+    /**
+     * Adds topics to the subscription of a client. Parameters: clientId, topics (comma separated), replace (optional; if
+     * true, the client is subscribed to exactly the given topics; "*" subscribes to all topics)
+     */
+    public static void subscribe( Context ctx ) {
+        Client client = getClient( ctx );
+        if ( client != null ) {
+            Set<String> topics = getTopics( ctx );
+            if ( Boolean.parseBoolean( ctx.formParam( "replace" ) ) ) {
+                client.setSubscription( client.getSubscription().withTopics( topics.contains( "*" ) ? null : topics ) );
+            } else {
+                client.setSubscription( client.getSubscription().subscribe( topics ) );
+            }
+            log.info( "Client {} subscribed to {}", client.getClientId(), topics );
+        }
+    }
+
+
+    /**
+     * Removes topics from the subscription of a client. Parameters: clientId, topics (comma separated)
+     */
+    public static void unsubscribe( Context ctx ) {
+        Client client = getClient( ctx );
+        if ( client != null ) {
+            Set<String> topics = getTopics( ctx );
+            client.setSubscription( client.getSubscription().unsubscribe( topics ) );
+            log.info( "Client {} unsubscribed from {}", client.getClientId(), topics );
+        }
+    }
+
+
+    /**
+     * Sets the filters applied to the output topics. Parameters: clientId, level (e.g., WARN; empty for none),
+     * regex (empty for none)
+     */
+    public static void setFilter( Context ctx ) {
+        Client client = getClient( ctx );
+        if ( client == null ) {
+            return;
+        }
+        String levelStr = ctx.formParam( "level" );
+        Level level = null;
+        if ( levelStr != null && !levelStr.isEmpty() ) {
+            try {
+                level = Level.valueOf( levelStr.toUpperCase( Locale.ROOT ) );
+            } catch ( IllegalArgumentException e ) {
+                ctx.status( 400 ).result( "Unknown log level: " + levelStr );
+                return;
+            }
+        }
+        try {
+            client.setSubscription( client.getSubscription().withFilter( level, ctx.formParam( "regex" ) ) );
+        } catch ( PatternSyntaxException e ) {
+            ctx.status( 400 ).result( "Invalid regular expression: " + e.getMessage() );
+            return;
+        }
+        log.info( "Set filter of client {}: level: {}, regex: {}", client.getClientId(), level, ctx.formParam( "regex" ) );
+    }
+
+
+    private static Client getClient( Context ctx ) {
+        String cidStr = ctx.formParam( "clientId" );
+        Client client = null;
+        if ( cidStr != null ) {
+            try {
+                client = reverseClientMap.get( Integer.parseInt( cidStr ) );
+            } catch ( NumberFormatException e ) {
+                // Handled below
+            }
+        }
+        if ( client == null ) {
+            log.error( "Unknown client id: {}", cidStr );
+            ctx.status( 400 ).result( "Unknown client id: " + cidStr );
+        }
+        return client;
+    }
+
+
+    private static Set<String> getTopics( Context ctx ) {
+        String topics = ctx.formParam( "topics" );
+        if ( topics == null ) {
+            return Collections.emptySet();
+        }
+        return parseTopics( topics );
+    }
+
+
+    private static Set<String> parseTopics( String topics ) {
+        return Arrays.stream( topics.split( "," ) )
+                .map( String::trim )
+                .filter( t -> !t.isEmpty() )
+                .collect( Collectors.toSet() );
+    }
+
+
+    public static void getStatistics( Context ctx ) {
+        List<Map<String, Object>> clients = new ArrayList<>();
+        for ( Client client : reverseClientMap.values() ) {
+            Map<String, Object> clientStatistics = client.getQueue().getStatistics();
+            clientStatistics.put( "clientType", client.getClientType().name() );
+            clientStatistics.put( "subscription", client.getSubscription().toMap() );
+            clients.add( clientStatistics );
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put( "clients", clients );
+        statistics.put( "frames", OutboundMessage.getStatistics() );
+        ctx.result( gson.toJson( statistics ) );
+    }
+
+
     public static Object getBenchmarkerConnected() {
         for ( Client client : clientMap.values() ) {
             if ( client.getClientType() == ClientType.BENCHMARKER ) {
@@ -149,16 +338,28 @@ class ClientRegistry {
 
         private final Session session;
         private final int clientId;
+        private final OutboundQueue queue;
         @Setter
         private ClientType clientType;
+        @Setter
+        private volatile Subscription subscription = Subscription.ALL;
 
 
-        Client( Session session, int clientId ) {
+        Client( Session session, int clientId, boolean binary ) {
             this.session = session;
             this.clientId = clientId;
+            // The subscription is applied by the sender of the client, so that expensive filters only delay this client
+            this.queue = new OutboundQueue( session, clientId, binary, message -> subscription.apply( message ) );
             this.clientType = ClientType.UNKNOWN;
         }
 
+
+        void deliver( OutboundMessage message ) {
+            if ( subscription.isSubscribed( message.getTopic() ) ) {
+                queue.offer( message );
+            }
+        }
+
     }
 
 }
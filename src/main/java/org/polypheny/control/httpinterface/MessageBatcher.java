@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.control.control.ConfigManager;
+
+
+/**
+ * Coalesces the lines sent on a topic (e.g., logOutput) into batches which are broadcast as a single frame of the form
+ * <code>{"topic": ["line 1", "line 2", ...]}</code>. A batch is flushed when the configured time window has passed since
+ * its first line or as soon as it exceeds the configured number of lines or bytes.
+ *
+ * For the configured replay topics, the flushed lines are additionally kept in an off-heap {@link ReplayBuffer} which is
+ * replayed to clients connecting later on.
+ */
+@Slf4j
+class MessageBatcher {
+
+    private static final long window;
+    private static final int maxLines;
+    private static final long maxBytes;
+
+    private static final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private static final List<Batch> replayBatches = new ArrayList<>();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread thread = new Thread( r, "MessageBatcher" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        window = config.getDuration( "pcrtl.control.batch.window", TimeUnit.MILLISECONDS );
+        maxLines = config.getInt( "pcrtl.control.batch.maxlines" );
+        maxBytes = config.getBytes( "pcrtl.control.batch.maxbytes" );
+
+        int replayBudget = config.getBytes( "pcrtl.control.replay.budget" ).intValue();
+        if ( replayBudget > 0 ) {
+            // Sorted to always acquire the locks in the same order
+            for ( String topic : new TreeSet<>( config.getStringList( "pcrtl.control.replay.topics" ) ) ) {
+                Batch batch = new Batch( topic, new ReplayBuffer( replayBudget ) );
+                batches.put( topic, batch );
+                replayBatches.add( batch );
+            }
+        }
+    }
+
+
+    static void add( String topic, String line ) {
+        Batch batch = batches.computeIfAbsent( topic, t -> new Batch( t, null ) );
+        boolean scheduleFlush;
+        long generation;
+        batch.lock.lock();
+        try {
+            scheduleFlush = batch.lines.isEmpty();
+            generation = batch.generation;
+            batch.lines.add( line );
+            batch.bytes += OutboundMessage.utf8Length( line );
+            if ( window <= 0 || batch.lines.size() >= maxLines || batch.bytes >= maxBytes ) {
+                batch.flush();
+                return;
+            }
+        } finally {
+            batch.lock.unlock();
+        }
+        if ( scheduleFlush ) {
+            flusher.schedule( () -> batch.flushLocked( generation ), window, TimeUnit.MILLISECONDS );
+        }
+    }
+
+
+    /**
+     * Registers a new client while no batch of a replay topic can be flushed and replays the buffered lines of these topics
+     * to it. This way, the client receives every line exactly once and in order.
+     *
+     * @param registration Adds the client to the set of clients receiving broadcasts
+     * @param replay Sends a bulk frame of lines of a topic to the new client
+     */
+    static void registerClient( Runnable registration, BiConsumer<String, List<String>> replay ) {
+        replayBatches.forEach( batch -> batch.lock.lock() );
+        try {
+            registration.run();
+            for ( Batch batch : replayBatches ) {
+                List<String> lines = batch.replay.getLines();
+                for ( int i = 0; i < lines.size(); i += maxLines ) {
+                    replay.accept( batch.topic, lines.subList( i, Math.min( i + maxLines, lines.size() ) ) );
+                }
+            }
+        } finally {
+            replayBatches.forEach( batch -> batch.lock.unlock() );
+        }
+    }
+
+
+    private static class Batch {
+
+        private final String topic;
+        private final ReplayBuffer replay;
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<String> lines = new ArrayList<>();
+        private long bytes = 0; // UTF-8 encoded size of the lines
+        private long generation = 0; // Incremented with every flush
+
+
+        Batch( String topic, ReplayBuffer replay ) {
+            this.topic = topic;
+            this.replay = replay;
+        }
+
+
+        /**
+         * Flushes the batch if it is still the one the timer has been scheduled for. It might already have been flushed
+         * because of its size, the timer must then not cut the window of the following batch short.
+         */
+        void flushLocked( long scheduledGeneration ) {
+            lock.lock();
+            try {
+                if ( generation == scheduledGeneration ) {
+                    flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+
+        // Must be called while holding the lock of this batch. This keeps the order of the frames on one topic.
+        private void flush() {
+            if ( lines.isEmpty() ) {
+                return;
+            }
+            List<String> toSend = lines;
+            lines = new ArrayList<>( Math.min( toSend.size(), maxLines ) );
+            bytes = 0;
+            generation++;
+            if ( replay != null ) {
+                toSend.forEach( replay::append );
+            }
+            try {
+                ClientRegistry.broadcast( topic, toSend );
+            } catch ( Exception e ) {
+                log.warn( "Exception while broadcasting batch on topic {}", topic, e );
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import com.google.gson.Gson;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import org.polypheny.control.client.BinaryProtocol;
+
+
+/**
+ * An immutable message on a topic. The payload is either a string, a map (e.g., the version information) or a batch
+ * of lines. A message is serialized at most once per protocol, no matter to how many clients it is sent: the first client
+ * needing the frame encodes it, all others get the same (immutable) frame.
+ */
+class OutboundMessage {
+
+    private static final Gson gson = new Gson();
+
+    // Allocation counters: how many frames have been encoded and how many times an encoded frame has been handed out
+    private static final LongAdder encodedFrames = new LongAdder();
+    private static final LongAdder encodedChars = new LongAdder();
+    private static final LongAdder encodedBytes = new LongAdder();
+    private static final LongAdder deliveredFrames = new LongAdder();
+
+    @Getter
+    private final String topic;
+    @Getter
+    private final Object payload;
+    private volatile String json;
+    private int jsonBytes; // UTF-8 encoded length of the JSON frame, written before json is published
+    private volatile ByteBuffer binary;
+
+
+    private OutboundMessage( String topic, Object payload ) {
+        this.topic = topic;
+        this.payload = payload;
+    }
+
+
+    static OutboundMessage of( String topic, String message ) {
+        return new OutboundMessage( topic, message );
+    }
+
+
+    static OutboundMessage of( String topic, Map<String, String> map ) {
+        return new OutboundMessage( topic, Collections.unmodifiableMap( map ) );
+    }
+
+
+    static OutboundMessage of( String topic, List<String> lines ) {
+        return new OutboundMessage( topic, Collections.unmodifiableList( lines ) );
+    }
+
+
+    boolean isLines() {
+        return payload instanceof List;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    List<String> getLines() {
+        return (List<String>) payload;
+    }
+
+
+    /**
+     * @return Whether the lines of the other message can be appended to this message.
+     */
+    boolean canMerge( OutboundMessage other ) {
+        return isLines() && other.isLines() && topic.equals( other.topic );
+    }
+
+
+    OutboundMessage merge( OutboundMessage other ) {
+        List<String> lines = new ArrayList<>( getLines().size() + other.getLines().size() );
+        lines.addAll( getLines() );
+        lines.addAll( other.getLines() );
+        return new OutboundMessage( topic, Collections.unmodifiableList( lines ) );
+    }
+
+
+    String toJson() {
+        String frame = json;
+        if ( frame == null ) {
+            synchronized ( this ) {
+                frame = json;
+                if ( frame == null ) {
+                    frame = gson.toJson( Collections.singletonMap( topic, payload ) );
+                    encodedFrames.increment();
+                    encodedChars.add( frame.length() );
+                    jsonBytes = utf8Length( frame );
+                    json = frame;
+                }
+            }
+        }
+        deliveredFrames.increment();
+        return frame;
+    }
+
+
+    /**
+     * @return The size of the JSON frame in bytes as sent on the wire (UTF-8). Only valid after {@link #toJson()}.
+     */
+    int getJsonBytes() {
+        return jsonBytes;
+    }
+
+
+    /**
+     * @return The length of the string encoded in UTF-8, computed without encoding it.
+     */
+    static int utf8Length( String s ) {
+        int length = 0;
+        for ( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            if ( c < 0x80 ) {
+                length++;
+            } else if ( c < 0x800 ) {
+                length += 2;
+            } else if ( Character.isHighSurrogate( c ) && i + 1 < s.length() && Character.isLowSurrogate( s.charAt( i + 1 ) ) ) {
+                length += 4;
+                i++;
+            } else if ( Character.isSurrogate( c ) ) {
+                // An unpaired surrogate is replaced by '?' when encoded
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
+    /**
+     * @return The frame of this message in the {@link BinaryProtocol}. The returned buffer is a read-only view sharing the
+     * content with all other clients.
+     */
+    ByteBuffer toBinary() {
+        ByteBuffer frame = binary;
+        if ( frame == null ) {
+            synchronized ( this ) {
+                frame = binary;
+                if ( frame == null ) {
+                    List<String> payloads;
+                    if ( isLines() ) {
+                        payloads = getLines();
+                    } else if ( payload instanceof String ) {
+                        payloads = Collections.singletonList( (String) payload );
+                    } else {
+                        payloads = Collections.singletonList( gson.toJson( payload ) );
+                    }
+                    frame = BinaryProtocol.encode( topic, payloads ).asReadOnlyBuffer();
+                    encodedFrames.increment();
+                    encodedBytes.add( frame.remaining() );
+                    binary = frame;
+                }
+            }
+        }
+        deliveredFrames.increment();
+        return frame.duplicate();
+    }
+
+
+    static Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        long encoded = encodedFrames.sum();
+        long delivered = deliveredFrames.sum();
+        statistics.put( "encodedFrames", encoded );
+        statistics.put( "encodedChars", encodedChars.sum() );
+        statistics.put( "encodedBinaryBytes", encodedBytes.sum() );
+        statistics.put( "deliveredFrames", delivered );
+        // Number of serializations that would have been necessary when encoding the messages per client
+        statistics.put( "savedEncodings", delivered - encoded );
+        return statistics;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import com.typesafe.config.Config;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.polypheny.control.client.BinaryProtocol;
+import org.polypheny.control.control.ConfigManager;
+import org.polypheny.control.control.Metrics;
+
+
+/**
+ * The bounded queue of messages waiting to be sent to one client. Enqueuing never blocks: the messages are sent by a
+ * (virtual) sender thread which is only running while there are messages in the queue. The subscription of the client is
+ * applied by this thread as well.
+ *
+ * Only messages consisting of lines (i.e., the output topics) count towards the capacity. If it is exceeded, the
+ * configured overflow policy is applied to them. Control messages (e.g., status or version) are never dropped; a queued
+ * control message is replaced by a newer one of the same topic.
+ */
+@Slf4j
+class OutboundQueue {
+
+    private static final int capacity;
+    private static final int mergeLimit;
+    private static final OverflowPolicy overflowPolicy;
+    private static final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<String, Metrics.Counter> sentBytes = new ConcurrentHashMap<>();
+    private static final Metrics.Histogram jsonSendDuration = Metrics.durationHistogram(
+            "pcrtl_websocket_send_duration_seconds", "Time it takes to send a frame to a WebSocket client", "protocol", "json" );
+    private static final Metrics.Histogram binarySendDuration = Metrics.durationHistogram(
+            "pcrtl_websocket_send_duration_seconds", "Time it takes to send a frame to a WebSocket client", "protocol", BinaryProtocol.BINARY );
+
+
+    static {
+        Config config = ConfigManager.getConfig();
+        capacity = config.getInt( "pcrtl.control.client.queue.capacity" );
+        if ( capacity < 1 ) {
+            throw new RuntimeException( "The capacity of the client queues must be at least 1, but is " + capacity );
+        }
+        mergeLimit = config.getInt( "pcrtl.control.client.queue.mergelimit" );
+        overflowPolicy = OverflowPolicy.fromConfig( config.getString( "pcrtl.control.client.queue.overflow" ) );
+    }
+
+
+    private final Session session;
+    private final int clientId;
+    private final boolean binary;
+    private final UnaryOperator<OutboundMessage> filter;
+    private final ArrayDeque<OutboundMessage> queue = new ArrayDeque<>();
+    private int queuedLines = 0; // Number of queued messages consisting of lines
+    private boolean sending = false;
+    private boolean closed = false;
+
+    private long queued = 0;
+    private long sent = 0;
+    private long dropped = 0;
+    private long merged = 0;
+    private long replaced = 0;
+
+
+    /**
+     * @param filter Applied to every message before it is sent, returns null if the message is not to be sent
+     */
+    OutboundQueue( Session session, int clientId, boolean binary, UnaryOperator<OutboundMessage> filter ) {
+        this.session = session;
+        this.clientId = clientId;
+        this.binary = binary;
+        this.filter = filter;
+    }
+
+
+    void offer( OutboundMessage message ) {
+        boolean disconnect = false;
+        synchronized ( this ) {
+            if ( closed ) {
+                return;
+            }
+            queued++;
+            if ( !message.isLines() ) {
+                // Only the latest control message of a topic is of interest
+                if ( queue.removeIf( m -> !m.isLines() && m.getTopic().equals( message.getTopic() ) ) ) {
+                    replaced++;
+                }
+            } else if ( queuedLines >= capacity ) {
+                switch ( overflowPolicy ) {
+                    case MERGE:
+                        OutboundMessage last = queue.peekLast();
+                        if ( last != null && last.canMerge( message ) && last.getLines().size() + message.getLines().size() <= mergeLimit ) {
+                            queue.addLast( queue.removeLast().merge( message ) );
+                            merged++;
+                            return;
+                        }
+                        // Nothing to merge with (or the merged message would get too large), fall back to dropping
+                        dropOldestLines();
+                        break;
+                    case DISCONNECT:
+                        dropped += queue.size() + 1;
+                        queue.clear();
+                        queuedLines = 0;
+                        closed = true;
+                        disconnect = true;
+                        break;
+                    case DROP_OLDEST:
+                    default:
+                        dropOldestLines();
+                        break;
+                }
+            }
+            if ( !disconnect ) {
+                queue.addLast( message );
+                if ( message.isLines() ) {
+                    queuedLines++;
+                }
+                if ( !sending ) {
+                    sending = true;
+                    senders.execute( this::drain );
+                }
+            }
+        }
+        if ( disconnect ) {
+            log.warn( "Disconnecting client {} because it does not keep up with the messages", clientId );
+            session.close( StatusCode.POLICY_VIOLATION, "Client is too slow" );
+        }
+    }
+
+
+    // Removes the oldest message consisting of lines, control messages are kept
+    private void dropOldestLines() {
+        Iterator<OutboundMessage> it = queue.iterator();
+        while ( it.hasNext() ) {
+            if ( it.next().isLines() ) {
+                it.remove();
+                queuedLines--;
+                dropped++;
+                return;
+            }
+        }
+    }
+
+
+    private void drain() {
+        while ( true ) {
+            OutboundMessage message;
+            synchronized ( this ) {
+                message = queue.pollFirst();
+                if ( message == null ) {
+                    sending = false;
+                    return;
+                }
+                if ( message.isLines() ) {
+                    queuedLines--;
+                }
+            }
+            message = filter.apply( message );
+            if ( message == null ) {
+                continue;
+            }
+            try {
+                log.debug( "Send message to client {}: topic: {}", clientId, message.getTopic() );
+                long start = System.nanoTime();
+                long size;
+                if ( binary ) {
+                    ByteBuffer frame = message.toBinary();
+                    size = frame.remaining();
+                    session.getRemote().sendBytes( frame );
+                    binarySendDuration.recordSince( start );
+                } else {
+                    String frame = message.toJson();
+                    size = message.getJsonBytes();
+                    session.getRemote().sendString( frame );
+                    jsonSendDuration.recordSince( start );
+                }
+                sentBytes.computeIfAbsent( message.getTopic(), topic -> Metrics.counter(
+                        "pcrtl_websocket_sent_bytes_total",
+                        "Size of the frames sent to the WebSocket clients in bytes",
+                        "topic", topic ) ).add( size );
+                synchronized ( this ) {
+                    sent++;
+                }
+            } catch ( Exception e ) {
+                log.debug( "Exception thrown while sending message to client {}", clientId, e );
+            }
+        }
+    }
+
+
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+        queuedLines = 0;
+    }
+
+
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put( "clientId", clientId );
+        statistics.put( "protocol", binary ? BinaryProtocol.BINARY : "json" );
+        statistics.put( "queued", queued );
+        statistics.put( "sent", sent );
+        statistics.put( "dropped", dropped );
+        statistics.put( "merged", merged );
+        statistics.put( "replaced", replaced );
+        statistics.put( "depth", queue.size() );
+        return statistics;
+    }
+
+
+    enum OverflowPolicy {
+        DROP_OLDEST, MERGE, DISCONNECT;
+
+
+        static OverflowPolicy fromConfig( String value ) {
+            switch ( value ) {
+                case "dropOldest":
+                    return DROP_OLDEST;
+                case "merge":
+                    return MERGE;
+                case "disconnect":
+                    return DISCONNECT;
+                default:
+                    throw new RuntimeException( "Unknown overflow policy: " + value );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A bounded ring buffer holding the most recent lines of a topic. The lines are stored UTF-8 encoded and length-prefixed
+ * in a direct (off-heap) buffer. If a new line does not fit, the oldest lines are evicted. Not thread-safe.
+ */
+class ReplayBuffer {
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private int head = 0; // Start of the oldest record
+    private int used = 0;
+    private int count = 0;
+
+
+    ReplayBuffer( int capacity ) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect( capacity );
+    }
+
+
+    void append( String line ) {
+        byte[] bytes = line.getBytes( StandardCharsets.UTF_8 );
+        int length = Math.min( bytes.length, capacity - HEADER_SIZE );
+        if ( length < 0 ) {
+            return;
+        }
+        while ( capacity - used < HEADER_SIZE + length ) {
+            evictOldest();
+        }
+        int tail = (head + used) % capacity;
+        putInt( tail, length );
+        put( (tail + HEADER_SIZE) % capacity, bytes, length );
+        used += HEADER_SIZE + length;
+        count++;
+    }
+
+
+    /**
+     * @return All buffered lines, the oldest first.
+     */
+    List<String> getLines() {
+        List<String> lines = new ArrayList<>( count );
+        int position = head;
+        for ( int i = 0; i < count; i++ ) {
+            int length = getInt( position );
+            byte[] bytes = new byte[length];
+            get( (position + HEADER_SIZE) % capacity, bytes );
+            lines.add( new String( bytes, StandardCharsets.UTF_8 ) );
+            position = (position + HEADER_SIZE + length) % capacity;
+        }
+        return lines;
+    }
+
+
+    private void evictOldest() {
+        int length = getInt( head );
+        head = (head + HEADER_SIZE + length) % capacity;
+        used -= HEADER_SIZE + length;
+        count--;
+    }
+
+
+    private void putInt( int index, int value ) {
+        for ( int i = 0; i < HEADER_SIZE; i++ ) {
+            buffer.put( (index + i) % capacity, (byte) (value >>> (24 - 8 * i)) );
+        }
+    }
+
+
+    private int getInt( int index ) {
+        int value = 0;
+        for ( int i = 0; i < HEADER_SIZE; i++ ) {
+            value = (value << 8) | (buffer.get( (index + i) % capacity ) & 0xFF);
+        }
+        return value;
+    }
+
+
+    private void put( int index, byte[] bytes, int length ) {
+        int firstPart = Math.min( length, capacity - index );
+        buffer.put( index, bytes, 0, firstPart );
+        if ( firstPart < length ) {
+            buffer.put( 0, bytes, firstPart, length - firstPart );
+        }
+    }
+
+
+    private void get( int index, byte[] bytes ) {
+        int firstPart = Math.min( bytes.length, capacity - index );
+        buffer.get( index, bytes, 0, firstPart );
+        if ( firstPart < bytes.length ) {
+            buffer.get( 0, bytes, firstPart, bytes.length - firstPart );
+        }
+    }
+
+}
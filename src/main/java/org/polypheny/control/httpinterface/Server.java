@@ -22,17 +22,28 @@ import com.typesafe.config.Config;
 import io.javalin.Javalin;
 import io.javalin.security.BasicAuthCredentials;
 import jakarta.servlet.http.HttpSession;
+import java.time.Duration;
 import java.util.Date;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SystemUtils;
 import org.polypheny.control.authentication.AuthenticationContext;
 import org.polypheny.control.authentication.AuthenticationManager;
 import org.polypheny.control.authentication.AuthenticationUtils;
 import org.polypheny.control.control.ConfigManager;
 import org.polypheny.control.control.Control;
-import org.polypheny.control.control.ServiceManager;
+import org.polypheny.control.control.InstanceDiscovery;
+import org.polypheny.control.control.JvmTelemetry;
+import org.polypheny.control.control.LogBrowser;
+import org.polypheny.control.control.Metrics;
+import org.polypheny.control.control.ProcessSampler;
+import org.polypheny.control.control.Readiness;
+import org.polypheny.control.control.ServiceStatus;
+import org.polypheny.control.control.StartupProfiler;
+import org.polypheny.control.control.Supervisor;
+import org.polypheny.control.control.VersionCache;
 
 
 @Slf4j
@@ -45,16 +56,29 @@ public class Server {
     private final Javalin javalin;
 
 
+    private static final String AUTH_METRIC = "pcrtl_auth_checks_total";
+    private static final String AUTH_HELP = "Number of authentication checks by result";
+    private static final Metrics.Counter authGranted = Metrics.counter( AUTH_METRIC, AUTH_HELP, "result", "granted" );
+    private static final Metrics.Counter authDenied = Metrics.counter( AUTH_METRIC, AUTH_HELP, "result", "denied" );
+    private static final Metrics.Counter authSession = Metrics.counter( AUTH_METRIC, AUTH_HELP, "result", "session" );
+    private static final Metrics.Counter authUnauthenticated = Metrics.counter( AUTH_METRIC, AUTH_HELP, "result", "unauthenticated" );
+    private static final Metrics.Histogram authDuration = Metrics.durationHistogram(
+            "pcrtl_auth_check_duration_seconds", "Time it takes to check the credentials of a client" );
+
+
     public Server( Control control, int port ) {
-        javalin = Javalin.create( config -> config.staticFiles.add( "/static" ) ).start( port );
+        Config config = ConfigManager.getConfig();
+        Duration idleTimeout = config.getDuration( "pcrtl.control.websocket.idletimeout" );
+        javalin = Javalin.create( javalinConfig -> {
+            javalinConfig.staticFiles.add( "/static" );
+            javalinConfig.jetty.wsFactoryConfig( factory -> factory.setIdleTimeout( idleTimeout ) );
+        } ).start( port );
 
         javalin.ws( "/socket/", ws -> {
             ws.onConnect( ClientRegistry::addClient );
             ws.onClose( ClientRegistry::removeClient );
         } );
 
-        Config config = ConfigManager.getConfig();
-
         // Configuration in seconds. Converting to milliseconds.
         sessionTimeout = config.getLong( "pcrtl.control.sessionTimeout" ) * 1000;
 
@@ -95,16 +119,23 @@ public class Server {
                 }
                 if ( ctx.basicAuthCredentials() != null ) {
                     BasicAuthCredentials credentials = ctx.basicAuthCredentials();
+                    long authStart = System.nanoTime();
                     boolean clientExists = AuthenticationManager.clientExists( credentials.getUsername(), credentials.getPassword() );
+                    authDuration.recordSince( authStart );
                     if ( clientExists ) {
+                        authGranted.inc();
                         ctx.sessionAttribute( "authenticated", true );
                     } else {
+                        authDenied.inc();
                         ctx.res().sendError( 403, "Authentication Failed" );
                     }
                 } else {
                     Object authenticated = ctx.sessionAttribute( "authenticated" );
                     if ( authenticated == null ) {
+                        authUnauthenticated.inc();
                         ctx.redirect( "/login.html" );
+                    } else {
+                        authSession.inc();
                     }
                 }
             } else {
@@ -147,43 +178,73 @@ public class Server {
         javalin.get( "/control/puiBranches", control::getAvailablePuiBranches );
         javalin.post( "/control/purgePolyphenyFolder", control::purgePolyphenyFolder );
         javalin.get( "/control/checkAnyRunningPolyphenyInstances", control::checkAnyRunningPolyphenyInstances );
+        javalin.get( "/control/ready", Readiness::getReadiness );
+        javalin.get( "/control/startup", StartupProfiler::getProfiles );
+        javalin.get( "/control/supervisor", Supervisor::getStatistics );
+        javalin.get( "/control/metrics/process", ProcessSampler::getSamples );
+        javalin.get( "/control/metrics/jvm", JvmTelemetry::getSamples );
 
         // /polyfier
         javalin.post( "/polyfier/start", control::polyfierStart );
         javalin.post( "/polyfier/stopForcefully", control::polyfierStopForcefully );
         javalin.post( "/polyfier/stopGracefully", control::polyfierStopGracefully );
 
+        // /logs
+        javalin.get( "/logs/list", LogBrowser::list );
+        javalin.get( "/logs/page", LogBrowser::page );
+        javalin.get( "/logs/search", LogBrowser::search );
+
         // Client
         javalin.post( "/client/type", ClientRegistry::setClientType );
+        javalin.post( "/client/subscribe", ClientRegistry::subscribe );
+        javalin.post( "/client/unsubscribe", ClientRegistry::unsubscribe );
+        javalin.post( "/client/filter", ClientRegistry::setFilter );
+        javalin.get( "/client/statistics", ClientRegistry::getStatistics );
+
+        // Metrics of Control in the Prometheus text format
+        javalin.get( "/metrics", Metrics::scrape );
+
+        // Push every status change to the clients. A status change might also change which instance is managed by Control.
+        ServiceStatus.addListener( state -> {
+            ClientRegistry.broadcast( "status", state.getName() );
+            ClientRegistry.updateOtherInstances();
+        } );
+
+        // Push whether Polypheny-DB is ready to process queries
+        Readiness.addListener( readiness -> ClientRegistry.broadcast( "ready", readiness ) );
+
+        // Report crashes of Polypheny-DB together with its last output
+        Supervisor.addListener( crash -> ClientRegistry.broadcast( "crashed", crash ) );
 
-        // Periodically sent status to all clients to keep the connection open
+        // Stream the resource usage of Polypheny-DB for the live charts
+        ProcessSampler.addListener( sample -> ClientRegistry.broadcast( "processMetrics", sample ) );
+        ProcessSampler.start();
+
+        // Stream the JVM telemetry of Polypheny-DB (memory, GC, threads, ...)
+        JvmTelemetry.addListener( sample -> ClientRegistry.broadcast( "jvmMetrics", sample ) );
+        JvmTelemetry.start();
+
+        // Keep the connections open using ping frames
         ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor();
-        exec.scheduleAtFixedRate(
-                () -> ClientRegistry.broadcast( "status", "" + ServiceManager.getStatus() ),
-                0,
-                2,
-                TimeUnit.SECONDS );
-
-        // For switching background color when a benchmarking client is connected
-        exec.scheduleAtFixedRate(
-                () -> ClientRegistry.broadcast( "benchmarkerConnected", "" + ClientRegistry.getBenchmarkerConnected() ),
-                0,
-                5,
-                TimeUnit.SECONDS );
+        long pingInterval = config.getDuration( "pcrtl.control.websocket.pinginterval", TimeUnit.MILLISECONDS );
+        exec.scheduleAtFixedRate( ClientRegistry::ping, pingInterval, pingInterval, TimeUnit.MILLISECONDS );
+
+        // Changes are pushed, but a frame lost while sending would leave a dashboard in a wrong state until the next change.
+        // Hence, the status is resent in a low frequency.
+        long resyncInterval = config.getDuration( "pcrtl.control.resync.interval", TimeUnit.MILLISECONDS );
+        if ( resyncInterval > 0 ) {
+            exec.scheduleAtFixedRate( ClientRegistry::resync, resyncInterval, resyncInterval, TimeUnit.MILLISECONDS );
+        }
 
         // For switching background color when there are other polypheny instances running on this host
-        exec.scheduleAtFixedRate(
-                () -> ClientRegistry.broadcast( "numberOfOtherRunningPolyphenyInstances", "" + control.getNumberOfOtherRunningPolyphenyInstances() ),
-                0,
-                5,
-                TimeUnit.SECONDS );
-
-        // Periodically sent versions to clients
-        exec.scheduleAtFixedRate(
-                () -> ClientRegistry.broadcast( "version", ServiceManager.getVersion() ),
-                0,
-                20,
-                TimeUnit.SECONDS );
+        if ( !SystemUtils.IS_OS_WINDOWS ) {
+            InstanceDiscovery.addListener( event -> ClientRegistry.updateOtherInstances() );
+            InstanceDiscovery.start();
+        }
+
+        // Send the versions to the clients whenever they change (e.g., after fetching the remotes or updating)
+        VersionCache.addListener( version -> ClientRegistry.broadcast( "version", version ) );
+        VersionCache.start();
 
         log.info( "Polypheny Control is running on port {}", port );
     }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.polypheny.control.control.LogLevels;
+import org.slf4j.event.Level;
+
+
+/**
+ * The immutable subscription of a client. It consists of the subscribed topics, a minimum log level and a regular
+ * expression. The level and the expression only apply to the output topics (i.e., messages consisting of lines). Lines
+ * without a recognizable log level (e.g., stack traces) are not filtered by level. The expression is compiled once when
+ * the subscription is created.
+ */
+class Subscription {
+
+    /**
+     * The subscription of new clients: all topics, no filters.
+     */
+    static final Subscription ALL = new Subscription( null, Collections.emptySet(), null, null );
+
+    // Always delivered, the clients need it to interact with the REST interface
+    private static final Set<String> MANDATORY_TOPICS = Collections.singleton( "clientId" );
+
+    private final Set<String> topics; // null means all topics except the excluded ones
+    private final Set<String> excluded;
+    private final Level minLevel;
+    private final Pattern filter;
+
+
+    private Subscription( Set<String> topics, Set<String> excluded, Level minLevel, Pattern filter ) {
+        this.topics = topics == null ? null : Collections.unmodifiableSet( topics );
+        this.excluded = Collections.unmodifiableSet( excluded );
+        this.minLevel = minLevel;
+        this.filter = filter;
+    }
+
+
+    Subscription subscribe( Set<String> topics ) {
+        if ( this.topics == null ) {
+            Set<String> excluded = new HashSet<>( this.excluded );
+            excluded.removeAll( topics );
+            return new Subscription( null, excluded, minLevel, filter );
+        }
+        Set<String> union = new HashSet<>( this.topics );
+        union.addAll( topics );
+        return new Subscription( union, excluded, minLevel, filter );
+    }
+
+
+    Subscription unsubscribe( Set<String> topics ) {
+        if ( this.topics == null ) {
+            Set<String> excluded = new HashSet<>( this.excluded );
+            excluded.addAll( topics );
+            return new Subscription( null, excluded, minLevel, filter );
+        }
+        Set<String> remaining = new HashSet<>( this.topics );
+        remaining.removeAll( topics );
+        return new Subscription( remaining, excluded, minLevel, filter );
+    }
+
+
+    /**
+     * Replaces the set of subscribed topics. Passing null subscribes to all topics.
+     */
+    Subscription withTopics( Set<String> topics ) {
+        return new Subscription( topics == null ? null : new HashSet<>( topics ), Collections.emptySet(), minLevel, filter );
+    }
+
+
+    Subscription withFilter( Level minLevel, String regex ) {
+        return new Subscription( topics, excluded, minLevel, regex == null || regex.isEmpty() ? null : Pattern.compile( regex ) );
+    }
+
+
+    boolean isSubscribed( String topic ) {
+        if ( MANDATORY_TOPICS.contains( topic ) ) {
+            return true;
+        }
+        return topics == null ? !excluded.contains( topic ) : topics.contains( topic );
+    }
+
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put( "topics", topics == null ? "*" : topics );
+        map.put( "excluded", excluded );
+        map.put( "minLevel", minLevel == null ? null : minLevel.name() );
+        map.put( "filter", filter == null ? null : filter.pattern() );
+        return map;
+    }
+
+
+    /**
+     * @return The message itself if it passes the subscription as a whole, a message containing only the matching lines,
+     * or null if nothing is to be delivered. Only in the second case a new frame needs to be encoded for this client.
+     */
+    OutboundMessage apply( OutboundMessage message ) {
+        if ( !isSubscribed( message.getTopic() ) ) {
+            return null;
+        }
+        if ( !message.isLines() || (minLevel == null && filter == null) ) {
+            return message;
+        }
+        List<String> lines = message.getLines();
+        List<String> matching = null;
+        for ( int i = 0; i < lines.size(); i++ ) {
+            String line = lines.get( i );
+            if ( matches( line ) ) {
+                if ( matching != null ) {
+                    matching.add( line );
+                }
+            } else if ( matching == null ) {
+                matching = new ArrayList<>( lines.subList( 0, i ) );
+            }
+        }
+        if ( matching == null ) {
+            return message;
+        }
+        return matching.isEmpty() ? null : OutboundMessage.of( message.getTopic(), matching );
+    }
+
+
+    private boolean matches( String line ) {
+        if ( minLevel != null ) {
+            Level level = LogLevels.parse( line );
+            if ( level != null && level.toInt() < minLevel.toInt() ) {
+                return false;
+            }
+        }
+        return filter == null || filter.matcher( line ).find();
+    }
+
+}
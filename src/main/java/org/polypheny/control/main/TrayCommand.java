@@ -144,7 +144,7 @@ public class TrayCommand extends ControlCommand {
         TimerTask menuUpdateTask = new TimerTask() {
             @Override
             public void run() {
-                String status = (String) ServiceManager.getStatus();
+                String status = ServiceManager.getStatus();
                 if ( status.equals( "running" ) ) {
                     statusItem.setLabel( "Running..." );
                     startItem.setEnabled( false );
@@ -163,6 +163,18 @@ public class TrayCommand extends ControlCommand {
                     stopItem.setEnabled( false );
                     puiItem.setEnabled( false );
                     trayIcon.setImage( iconStopped );
+                } else if ( status.equals( "crashed" ) ) {
+                    statusItem.setLabel( "Crashed..." );
+                    startItem.setEnabled( true );
+                    stopItem.setEnabled( false );
+                    puiItem.setEnabled( false );
+                    trayIcon.setImage( iconStopped );
+                } else if ( status.equals( "starting" ) || status.equals( "stopping" ) ) {
+                    statusItem.setLabel( status.equals( "starting" ) ? "Starting..." : "Stopping..." );
+                    startItem.setEnabled( false );
+                    stopItem.setEnabled( false );
+                    puiItem.setEnabled( false );
+                    trayIcon.setImage( iconStopped );
                 }
             }
         };
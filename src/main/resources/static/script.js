@@ -34,7 +34,7 @@ webSocket.onmessage = function (msg) {
         }
         setClientType();
     }
-    if ( data.hasOwnProperty("status") ) { // Periodically sent by server to keep the connection open
+    if ( data.hasOwnProperty("status") ) { // Sent by the server whenever the status changes
         if ( data["status"] === "polyfier" ) {
             $( '#logContent' ).hide();
             $( '#polyfierContent' ).hide();
@@ -51,7 +51,13 @@ webSocket.onmessage = function (msg) {
                 $( '#polyfierRunningContent' ).hide();
                 $( '#dashboardContent' ).show();
             }
-        } else if ( data["status"] === "idling" ) {
+        } else if ( data["status"] === "starting" ) {
+            $( '#btn-start' ).hide();
+            $( '#btn-stop' ).show();
+        } else if ( data["status"] === "stopping" ) {
+            $( '#btn-start' ).hide();
+            $( '#btn-stop' ).hide();
+        } else if ( data["status"] === "idling" || data["status"] === "crashed" ) {
             $( '#btn-stop' ).hide();
             $( '#btn-start' ).show();
             $( '#updateOutputBackButton' ).removeClass('btn-back-disabled');
@@ -74,14 +80,14 @@ webSocket.onmessage = function (msg) {
         $( '#footer-right' ).text( "Status: " + data["status"] );
         state = data["status"];
     }
-    if ( data.hasOwnProperty( "benchmarkerConnected" ) ) { // Periodically sent by server to keep the connection open
+    if ( data.hasOwnProperty( "benchmarkerConnected" ) ) { // Sent by the server whenever a benchmarker connects or disconnects
         if ( data["benchmarkerConnected"] === "true" ) {
             $( "body" ).css( "background-color", "#e5983d" );
         } else {
             $( "body" ).css( "background-color", "#3B83C8" );
         }
     }
-    if ( data.hasOwnProperty( "numberOfOtherRunningPolyphenyInstances" ) ) { // Periodically sent by server to keep the connection open
+    if ( data.hasOwnProperty( "numberOfOtherRunningPolyphenyInstances" ) ) { // Sent by the server whenever this number changes
         if ( data["numberOfOtherRunningPolyphenyInstances"] > 0 ) {
             $( '#error-header' ).show();
             $( '#error-header' ).html( "There are other running instances of Polypheny on this host!" );
@@ -89,38 +95,62 @@ webSocket.onmessage = function (msg) {
             $( '#error-header' ).hide();
         }
     }
-    if ( data.hasOwnProperty( "version" ) ) { // Periodically sent by server to keep the connection open
+    if ( data.hasOwnProperty( "version" ) ) { // Sent by the server whenever the version changes
         var pdbString = "PDB: " + data["version"]["pdb-branch"] + " @ " + data["version"]["pdb-commit"].substring( 0, 7 );
         var puiString = "PUI: " + data["version"]["pui-branch"] + " @ " + data["version"]["pui-commit"].substring( 0, 7 );
-        if ( data["version"]["pdb-behind"] > 0 ) {
+        if ( data["version"]["pdb-behind"] != 0 ) { // -1: behind, but the number of commits is unknown (shallow clones)
             pdbString = "<span style='color: #a90005; font-weight: 900'>" + pdbString + "</span>";
         }
-        if ( data["version"]["pui-behind"] > 0 ) {
+        if ( data["version"]["pui-behind"] != 0 ) {
             puiString = "<span style='color: #a90005; font-weight: 900'>" + puiString + "</span>";
         }
         $( '#footer-middle' ).html( pdbString + " <br> " + puiString );
     }
+    if ( data.hasOwnProperty( "ready" ) ) { // Sent by the server when Polypheny-DB has become ready or has terminated
+        if ( data["ready"]["ready"] === "true" ) {
+            loadStartupTrend();
+            $( '#footer-right' ).text( "Status: " + state + " (ready after " + (data["ready"]["latency"] / 1000).toFixed( 1 ) + " s)" );
+        } else {
+            $( '#footer-right' ).text( "Status: " + state );
+        }
+    }
+    if ( data.hasOwnProperty( "crashed" ) ) { // Sent by the server when Polypheny-DB has crashed
+        var crash = data["crashed"];
+        var message = "> Polypheny-DB has crashed (exit code: " + crash["exitCode"] + ")";
+        if ( crash["action"] === "restart" ) {
+            message += ", restarting in " + crash["backoff"] + " ms";
+        } else if ( crash["action"] === "crashLoop" ) {
+            message += ", not restarting because it keeps crashing";
+        }
+        appendOutput( $( '#logOutput' ), "\n" + message + "\n> Last output:\n" + crash["lines"] );
+    }
     if ( data.hasOwnProperty( "startOutput" ) ) {
-        appendOutput( $( '#startOutput' ), data["startOutput"] );
+        appendOutput( $( '#startOutput' ), linesToText( data["startOutput"] ) );
     }
     if ( data.hasOwnProperty( "stopOutput" ) ) {
-        appendOutput( $( '#stopOutput' ), data["stopOutput"] );
+        appendOutput( $( '#stopOutput' ), linesToText( data["stopOutput"] ) );
     }
     if ( data.hasOwnProperty( "restartOutput" ) ) {
-        appendOutput( $( '#restartOutput' ), data["restartOutput"] );
+        appendOutput( $( '#restartOutput' ), linesToText( data["restartOutput"] ) );
     }
     if (data.hasOwnProperty("updateOutput")) {
-        appendOutput($('#updateOutput'), data["updateOutput"]);
+        appendOutput($('#updateOutput'), linesToText(data["updateOutput"]));
     }
     if (data.hasOwnProperty("logOutput")) {
         if (state === "polyfier") {
-            appendOutput($('#logOutputPolyfier'), data["logOutput"]);
+            appendOutput($('#logOutputPolyfier'), linesToText(data["logOutput"]));
         } else {
-            appendOutput($('#logOutput'), data["logOutput"]);
+            appendOutput($('#logOutput'), linesToText(data["logOutput"]));
         }
     }
+    if ( data.hasOwnProperty( "processMetrics" ) ) { // Sent by the server for every sample of the resource usage of Polypheny-DB
+        addProcessMetrics( data["processMetrics"] );
+    }
+    if ( data.hasOwnProperty( "jvmMetrics" ) ) { // Sent by the server for every sample of the JVM telemetry of Polypheny-DB
+        showJvmMetrics( data["jvmMetrics"] );
+    }
     if (data.hasOwnProperty("polyfierOutput")) {
-            appendOutput($('#polyfierOutput'), data["polyfierOutput"]);
+            appendOutput($('#polyfierOutput'), linesToText(data["polyfierOutput"]));
         }
 };
 
@@ -128,6 +158,100 @@ webSocket.onclose = function () {
     $("body").css("background-color", "gray");
 };
 
+// Output topics are sent in batches, i.e., as an array of lines
+function linesToText(lines) {
+    if (Array.isArray(lines)) {
+        return lines.join("\n");
+    }
+    return lines;
+}
+
+// Shows the mean startup time (per phase) of the last commits Polypheny-DB has been started with
+function loadStartupTrend() {
+    $.get( "control/startup", function ( response ) {
+        var data = JSON.parse( response );
+        var commits = data["commits"].slice( -10 );
+        if ( commits.length === 0 ) {
+            return;
+        }
+        var table = $( '#startupTrendTable' );
+        var header = $( "<tr>" ).append( $( "<th>" ).text( "Commit" ) ).append( $( "<th>" ).text( "Starts" ) ).append( $( "<th>" ).text( "Total" ) );
+        data["phases"].forEach( function ( phase ) {
+            header.append( $( "<th>" ).text( phase ) );
+        } );
+        table.empty().append( header );
+        commits.forEach( function ( commit ) {
+            var row = $( "<tr>" )
+                .append( $( "<td>" ).text( commit["branch"] + " @ " + String( commit["commit"] ).substring( 0, 7 ) ) )
+                .append( $( "<td>" ).text( commit["starts"] ) )
+                .append( $( "<td>" ).text( commit["total"] < 0 ? "-" : (commit["total"] / 1000).toFixed( 1 ) + " s" ) );
+            data["phases"].forEach( function ( phase ) {
+                var duration = commit["phases"][phase];
+                row.append( $( "<td>" ).text( duration === undefined ? "-" : (duration / 1000).toFixed( 1 ) + " s" ) );
+            } );
+            table.append( row );
+        } );
+        $( '#startupTrend' ).show();
+    } );
+}
+
+$( document ).ready( loadStartupTrend );
+
+// The most recent samples of the resource usage, drawn as a chart of the CPU usage (white) and resident memory (black)
+var processMetrics = [];
+
+function addProcessMetrics(sample) {
+    processMetrics.push(sample);
+    if (processMetrics.length > 120) {
+        processMetrics.shift();
+    }
+    $('#processMetrics').show();
+    $('#processMetricsText').text("CPU: " + (sample["cpu"] / 100).toFixed(0) + "%"
+        + " | RSS: " + (sample["rss"] / 1048576).toFixed(0) + " MiB"
+        + " | Threads: " + sample["threads"]
+        + " | FDs: " + sample["fds"]);
+    var canvas = document.getElementById("processMetricsChart");
+    var context = canvas.getContext("2d");
+    context.clearRect(0, 0, canvas.width, canvas.height);
+    drawProcessMetric(context, canvas, "cpu", "white");
+    drawProcessMetric(context, canvas, "rss", "black");
+}
+
+function showJvmMetrics(sample) {
+    var gcCount = 0;
+    var gcTime = 0;
+    Object.keys(sample).forEach(function (field) {
+        if (field.endsWith(".count")) {
+            gcCount += Number(sample[field]);
+        } else if (field.endsWith(".time")) {
+            gcTime += Number(sample[field]);
+        }
+    });
+    $('#jvmMetricsText').text("Heap: " + (sample["heapUsed"] / 1048576).toFixed(0) + " / " + (sample["heapCommitted"] / 1048576).toFixed(0) + " MiB"
+        + " | GC: " + gcCount + " (" + gcTime + " ms)"
+        + " | Classes: " + sample["loadedClasses"]
+        + " | JIT: " + sample["compilationTime"] + " ms");
+}
+
+function drawProcessMetric(context, canvas, field, color) {
+    var max = 1;
+    processMetrics.forEach(function (sample) {
+        max = Math.max(max, Number(sample[field]));
+    });
+    context.strokeStyle = color;
+    context.beginPath();
+    processMetrics.forEach(function (sample, i) {
+        var x = i * canvas.width / 119;
+        var y = canvas.height - 1 - Number(sample[field]) / max * (canvas.height - 2);
+        if (i === 0) {
+            context.moveTo(x, y);
+        } else {
+            context.lineTo(x, y);
+        }
+    });
+    context.stroke();
+}
+
 function appendOutput(box, text) {
     var lines = box.html().split("\n");
     var str = lines.slice(-1000).join("\n");
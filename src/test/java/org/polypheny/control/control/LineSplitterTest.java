@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class LineSplitterTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineSplitter splitter = new LineSplitter( lines::add );
+
+
+    @Test
+    public void splitsLines() {
+        feed( "first\nsecond\n\nfourth\n" );
+        Assertions.assertEquals( Arrays.asList( "first", "second", "", "fourth" ), lines );
+    }
+
+
+    @Test
+    public void keepsIncompleteLine() {
+        feed( "first\nsec" );
+        Assertions.assertEquals( Collections.singletonList( "first" ), lines );
+        feed( "ond\n" );
+        Assertions.assertEquals( Arrays.asList( "first", "second" ), lines );
+    }
+
+
+    @Test
+    public void stripsCarriageReturn() {
+        feed( "first\r\nsecond\r\n" );
+        Assertions.assertEquals( Arrays.asList( "first", "second" ), lines );
+    }
+
+
+    @Test
+    public void stripsCarriageReturnSplitAcrossReads() {
+        feed( "first\r" );
+        Assertions.assertTrue( lines.isEmpty() );
+        feed( "\nsecond\r" );
+        feed( "\n" );
+        Assertions.assertEquals( Arrays.asList( "first", "second" ), lines );
+    }
+
+
+    @Test
+    public void keepsCarriageReturnInsideLine() {
+        feed( "a\rb\n" );
+        Assertions.assertEquals( Collections.singletonList( "a\rb" ), lines );
+    }
+
+
+    @Test
+    public void decodesMultiByteCharacterSplitAcrossReads() {
+        // Two, three and four bytes in UTF-8
+        String line = "\u00e4 \u20ac \ud83d\ude00";
+        byte[] bytes = (line + "\n").getBytes( StandardCharsets.UTF_8 );
+        for ( int i = 0; i < bytes.length; i++ ) {
+            // Every byte in its own read
+            splitter.feed( bytes, i, 1 );
+        }
+        Assertions.assertEquals( Collections.singletonList( line ), lines );
+
+        lines.clear();
+        for ( int split = 1; split < bytes.length; split++ ) {
+            splitter.feed( ByteBuffer.wrap( bytes, 0, split ) );
+            splitter.feed( ByteBuffer.wrap( bytes, split, bytes.length - split ) );
+        }
+        Assertions.assertEquals( Collections.nCopies( bytes.length - 1, line ), lines );
+    }
+
+
+    @Test
+    public void growsForLongLines() {
+        StringBuilder line = new StringBuilder();
+        for ( int i = 0; i < 5000; i++ ) {
+            line.append( (char) ('a' + i % 26) );
+        }
+        feed( line + "\nshort\n" );
+        Assertions.assertEquals( Arrays.asList( line.toString(), "short" ), lines );
+    }
+
+
+    @Test
+    public void flushEmitsIncompleteLine() {
+        feed( "first\nlast" );
+        splitter.flush();
+        Assertions.assertEquals( Arrays.asList( "first", "last" ), lines );
+        // Nothing left to flush
+        splitter.flush();
+        Assertions.assertEquals( 2, lines.size() );
+    }
+
+
+    @Test
+    public void resetDiscardsIncompleteLine() {
+        feed( "discarded" );
+        splitter.reset();
+        feed( "kept\n" );
+        Assertions.assertEquals( Collections.singletonList( "kept" ), lines );
+    }
+
+
+    @Test
+    public void respectsOffsetAndLength() {
+        byte[] bytes = "xxfirst\nyy".getBytes( StandardCharsets.UTF_8 );
+        splitter.feed( bytes, 2, 6 );
+        Assertions.assertEquals( Collections.singletonList( "first" ), lines );
+    }
+
+
+    private void feed( String chunk ) {
+        byte[] bytes = chunk.getBytes( StandardCharsets.UTF_8 );
+        splitter.feed( bytes, 0, bytes.length );
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.control;
+
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.polypheny.control.control.LogIndex.Block;
+import org.slf4j.event.Level;
+
+
+public class LogIndexTest {
+
+    @Test
+    public void splitsBlocksByLines( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        StringBuilder content = new StringBuilder();
+        for ( int i = 0; i < 2500; i++ ) {
+            content.append( "line " ).append( i ).append( '\n' );
+        }
+        write( logFile, content.toString() );
+
+        LogIndex index = LogIndex.loadPersisted( logFile );
+        List<Block> blocks = index.getBlocks();
+        Assertions.assertEquals( 3, blocks.size() );
+        Assertions.assertEquals( LogIndex.BLOCK_LINES, blocks.get( 0 ).getLineCount() );
+        Assertions.assertEquals( LogIndex.BLOCK_LINES, blocks.get( 1 ).getLineCount() );
+        Assertions.assertEquals( 2500 - 2 * LogIndex.BLOCK_LINES, blocks.get( 2 ).getLineCount() );
+        Assertions.assertEquals( 2500, index.getLineCount() );
+
+        // The blocks cover the file without gaps
+        long offset = 0;
+        long line = 0;
+        for ( Block block : blocks ) {
+            Assertions.assertEquals( offset, block.getStartOffset() );
+            Assertions.assertEquals( line, block.getStartLine() );
+            offset = block.getEndOffset();
+            line = block.getEndLine();
+        }
+        Assertions.assertEquals( logFile.length(), offset );
+    }
+
+
+    @Test
+    public void splitsBlocksByBytes( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        StringBuilder line = new StringBuilder();
+        while ( line.length() < 100 * 1024 ) {
+            line.append( "0123456789" );
+        }
+        StringBuilder content = new StringBuilder();
+        for ( int i = 0; i < 5; i++ ) {
+            content.append( line ).append( '\n' );
+        }
+        write( logFile, content.toString() );
+
+        // A block ends with the first line reaching the limit
+        List<Block> blocks = LogIndex.loadPersisted( logFile ).getBlocks();
+        Assertions.assertEquals( 2, blocks.size() );
+        Assertions.assertEquals( 3, blocks.get( 0 ).getLineCount() );
+        Assertions.assertEquals( 2, blocks.get( 1 ).getLineCount() );
+    }
+
+
+    @Test
+    public void findLine( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        StringBuilder content = new StringBuilder();
+        for ( int i = 0; i < 2500; i++ ) {
+            content.append( "line " ).append( i ).append( '\n' );
+        }
+        write( logFile, content.toString() );
+
+        LogIndex index = LogIndex.loadPersisted( logFile );
+        Assertions.assertEquals( 0, index.findLine( 0 ) );
+        Assertions.assertEquals( 0, index.findLine( 1023 ) );
+        Assertions.assertEquals( 1, index.findLine( 1024 ) );
+        Assertions.assertEquals( 1, index.findLine( 2047 ) );
+        Assertions.assertEquals( 2, index.findLine( 2048 ) );
+        Assertions.assertEquals( 2, index.findLine( 2499 ) );
+        Assertions.assertEquals( -1, index.findLine( 2500 ) );
+        Assertions.assertEquals( -1, index.findLine( -1 ) );
+    }
+
+
+    @Test
+    public void findTime( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        writeIndex( logFile,
+                new Block( 0, 0, 100, 1000, 1999, 0, 10 ),
+                new Block( 10, 100, 200, 2000, 2999, 0, 10 ),
+                new Block( 20, 200, 300, 3000, 3999, 0, 10 ) );
+
+        LogIndex index = LogIndex.loadPersisted( logFile );
+        Assertions.assertEquals( 0, index.findTime( 0 ) );
+        Assertions.assertEquals( 0, index.findTime( 1999 ) );
+        Assertions.assertEquals( 1, index.findTime( 2000 ) );
+        Assertions.assertEquals( 2, index.findTime( 3500 ) );
+        Assertions.assertEquals( 3, index.findTime( 4000 ) );
+    }
+
+
+    @Test
+    public void findTimeStopsAtUnknownTime( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        writeIndex( logFile,
+                new Block( 0, 0, 100, 1000, 1999, 0, 10 ),
+                new Block( 10, 100, 200, LogIndex.UNKNOWN_TIME, LogIndex.UNKNOWN_TIME, 0, 10 ),
+                new Block( 20, 200, 300, 3000, 3999, 0, 10 ) );
+
+        // A block without time might contain lines of any time
+        Assertions.assertEquals( 1, LogIndex.loadPersisted( logFile ).findTime( 3500 ) );
+    }
+
+
+    @Test
+    public void overlaps() {
+        Block block = new Block( 0, 0, 100, 1000, 1999, 0, 10 );
+        Assertions.assertTrue( block.overlaps( 0, 1000 ) );
+        Assertions.assertTrue( block.overlaps( 1500, 1600 ) );
+        Assertions.assertTrue( block.overlaps( 1999, 5000 ) );
+        Assertions.assertFalse( block.overlaps( 0, 999 ) );
+        Assertions.assertFalse( block.overlaps( 2000, 5000 ) );
+        Assertions.assertTrue( new Block( 0, 0, 100, LogIndex.UNKNOWN_TIME, LogIndex.UNKNOWN_TIME, 0, 10 ).overlaps( 0, 1 ) );
+    }
+
+
+    @Test
+    public void levelMask( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        write( logFile, "12:00:00 INFO started\n12:00:01 [ERROR] failed\n\tat Main.main(Main.java:1)\n" );
+
+        int mask = LogIndex.loadPersisted( logFile ).getBlocks().get( 0 ).getLevelMask();
+        Assertions.assertEquals( LogIndex.levelBit( Level.INFO ) | LogIndex.levelBit( Level.ERROR ) | LogIndex.NO_LEVEL, mask );
+        Assertions.assertEquals( 0, mask & LogIndex.levelBit( Level.WARN ) );
+
+        int atLeastWarn = LogIndex.levelMaskAtLeast( Level.WARN );
+        Assertions.assertEquals( LogIndex.levelBit( Level.ERROR ) | LogIndex.NO_LEVEL, mask & atLeastWarn );
+    }
+
+
+    @Test
+    public void indexesLastLineWithoutBreak( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        write( logFile, "first\nsecond\nincomplete" );
+
+        LogIndex index = LogIndex.loadPersisted( logFile );
+        Assertions.assertEquals( 3, index.getLineCount() );
+        Assertions.assertEquals( logFile.length(), index.getBlocks().get( 0 ).getEndOffset() );
+    }
+
+
+    @Test
+    public void ignoresPartiallyWrittenRecord( @TempDir Path dir ) throws IOException {
+        File logFile = dir.resolve( "polypheny.log" ).toFile();
+        writeIndex( logFile, new Block( 0, 0, 100, 1000, 1999, 0, 10 ) );
+        try ( FileOutputStream out = new FileOutputStream( LogIndex.indexFileOf( logFile ), true ) ) {
+            out.write( new byte[Block.SIZE / 2] );
+        }
+        Assertions.assertEquals( 1, LogIndex.loadPersisted( logFile ).getBlocks().size() );
+    }
+
+
+    @Test
+    public void missingIndex( @TempDir Path dir ) {
+        LogIndex index = LogIndex.loadPersisted( dir.resolve( "polypheny.log" ).toFile() );
+        Assertions.assertTrue( index.getBlocks().isEmpty() );
+        Assertions.assertEquals( 0, index.getLineCount() );
+        Assertions.assertEquals( -1, index.findLine( 0 ) );
+    }
+
+
+    // Writes the log file together with its index, in chunks as the AsyncLogWriter does
+    private static void write( File logFile, String content ) throws IOException {
+        byte[] bytes = content.getBytes( StandardCharsets.UTF_8 );
+        Files.write( logFile.toPath(), bytes );
+        LogIndex.Writer writer = new LogIndex.Writer( logFile );
+        for ( int offset = 0; offset < bytes.length; offset += 4096 ) {
+            writer.append( bytes, offset, Math.min( 4096, bytes.length - offset ) );
+        }
+        writer.close();
+    }
+
+
+    private static void writeIndex( File logFile, Block... blocks ) throws IOException {
+        try ( DataOutputStream out = new DataOutputStream( new FileOutputStream( LogIndex.indexFileOf( logFile ) ) ) ) {
+            for ( Block block : blocks ) {
+                block.write( out );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class ReplayBufferTest {
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+
+    @Test
+    public void keepsLinesInOrder() {
+        ReplayBuffer buffer = new ReplayBuffer( 1024 );
+        Assertions.assertTrue( buffer.getLines().isEmpty() );
+        buffer.append( "first" );
+        buffer.append( "" );
+        buffer.append( "third" );
+        Assertions.assertEquals( Arrays.asList( "first", "", "third" ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void evictsOldestLines() {
+        // Every record takes 7 bytes, only two of them fit
+        ReplayBuffer buffer = new ReplayBuffer( 16 );
+        buffer.append( "aaa" );
+        buffer.append( "bbb" );
+        buffer.append( "ccc" );
+        Assertions.assertEquals( Arrays.asList( "bbb", "ccc" ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void wrapsPayloadAroundEnd() {
+        ReplayBuffer buffer = new ReplayBuffer( 20 );
+        buffer.append( "aaa" );
+        buffer.append( "bbb" );
+        // The payload of this record continues at the start of the buffer
+        buffer.append( "ccc" );
+        buffer.append( "dd" );
+        Assertions.assertEquals( Arrays.asList( "bbb", "ccc", "dd" ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void wrapsHeaderAroundEnd() {
+        ReplayBuffer buffer = new ReplayBuffer( 16 );
+        buffer.append( "aaaaa" );
+        // The header of this record starts two bytes before the end of the buffer
+        buffer.append( "b" );
+        buffer.append( "c" );
+        Assertions.assertEquals( Arrays.asList( "b", "c" ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void wrapsRepeatedly() {
+        int capacity = 64;
+        ReplayBuffer buffer = new ReplayBuffer( capacity );
+        Deque<String> expected = new ArrayDeque<>();
+        int used = 0;
+        for ( int i = 0; i < 1000; i++ ) {
+            String line = "line-" + i;
+            buffer.append( line );
+            expected.addLast( line );
+            used += HEADER_SIZE + line.length();
+            while ( used > capacity ) {
+                used -= HEADER_SIZE + expected.removeFirst().length();
+            }
+            Assertions.assertEquals( new ArrayList<>( expected ), buffer.getLines() );
+        }
+    }
+
+
+    @Test
+    public void keepsMultiByteCharacters() {
+        ReplayBuffer buffer = new ReplayBuffer( 32 );
+        String line = "\u00e4\u00f6\u00fc \u20ac";
+        for ( int i = 0; i < 10; i++ ) {
+            buffer.append( line );
+        }
+        Assertions.assertEquals( Collections.nCopies( 32 / (HEADER_SIZE + line.getBytes( StandardCharsets.UTF_8 ).length), line ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void truncatesOversizedLine() {
+        ReplayBuffer buffer = new ReplayBuffer( 16 );
+        buffer.append( "aaa" );
+        buffer.append( "0123456789abcdefghij" );
+        // The oversized line replaces everything and is cut to the capacity of the buffer
+        Assertions.assertEquals( Collections.singletonList( "0123456789ab" ), buffer.getLines() );
+        buffer.append( "x" );
+        Assertions.assertEquals( Collections.singletonList( "x" ), buffer.getLines() );
+    }
+
+
+    @Test
+    public void ignoresLinesIfCapacityIsBelowHeader() {
+        ReplayBuffer buffer = new ReplayBuffer( HEADER_SIZE - 1 );
+        buffer.append( "a" );
+        Assertions.assertTrue( buffer.getLines().isEmpty() );
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2023 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.control.httpinterface;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.Level;
+
+
+public class SubscriptionTest {
+
+    private static final List<String> LINES = Arrays.asList(
+            "12:00:00.000 DEBUG [main] Loading catalog",
+            "12:00:00.100 INFO  [main] Start plugin 'rest-interface'",
+            "12:00:00.200 WARN  [main] Port 8080 is in use",
+            "\tat org.polypheny.db.PolyphenyDb.main(PolyphenyDb.java:42)",
+            "12:00:00.300 [ERROR] Catalog is corrupt" );
+
+
+    @Test
+    public void allTopicsByDefault() {
+        Assertions.assertTrue( Subscription.ALL.isSubscribed( "status" ) );
+        Assertions.assertTrue( Subscription.ALL.isSubscribed( "logOutput" ) );
+    }
+
+
+    @Test
+    public void unsubscribeFromAllTopics() {
+        Subscription subscription = Subscription.ALL.unsubscribe( new HashSet<>( Arrays.asList( "logOutput", "processMetrics" ) ) );
+        Assertions.assertFalse( subscription.isSubscribed( "logOutput" ) );
+        Assertions.assertFalse( subscription.isSubscribed( "processMetrics" ) );
+        Assertions.assertTrue( subscription.isSubscribed( "status" ) );
+
+        subscription = subscription.subscribe( Collections.singleton( "logOutput" ) );
+        Assertions.assertTrue( subscription.isSubscribed( "logOutput" ) );
+        Assertions.assertFalse( subscription.isSubscribed( "processMetrics" ) );
+    }
+
+
+    @Test
+    public void explicitTopics() {
+        Subscription subscription = Subscription.ALL.withTopics( Collections.singleton( "status" ) );
+        Assertions.assertTrue( subscription.isSubscribed( "status" ) );
+        Assertions.assertFalse( subscription.isSubscribed( "logOutput" ) );
+
+        subscription = subscription.subscribe( Collections.singleton( "logOutput" ) ).unsubscribe( Collections.singleton( "status" ) );
+        Assertions.assertFalse( subscription.isSubscribed( "status" ) );
+        Assertions.assertTrue( subscription.isSubscribed( "logOutput" ) );
+
+        Assertions.assertTrue( subscription.withTopics( null ).isSubscribed( "status" ) );
+    }
+
+
+    @Test
+    public void clientIdIsMandatory() {
+        Assertions.assertTrue( Subscription.ALL.withTopics( Collections.emptySet() ).isSubscribed( "clientId" ) );
+        Assertions.assertTrue( Subscription.ALL.unsubscribe( Collections.singleton( "clientId" ) ).isSubscribed( "clientId" ) );
+    }
+
+
+    @Test
+    public void dropsMessagesOfOtherTopics() {
+        Subscription subscription = Subscription.ALL.withTopics( Collections.singleton( "status" ) );
+        Assertions.assertNull( subscription.apply( OutboundMessage.of( "logOutput", LINES ) ) );
+        OutboundMessage status = OutboundMessage.of( "status", "running" );
+        Assertions.assertSame( status, subscription.apply( status ) );
+    }
+
+
+    @Test
+    public void passesMessageWithoutFilter() {
+        OutboundMessage message = OutboundMessage.of( "logOutput", LINES );
+        Assertions.assertSame( message, Subscription.ALL.apply( message ) );
+    }
+
+
+    @Test
+    public void filtersByLevel() {
+        Subscription subscription = Subscription.ALL.withFilter( Level.WARN, null );
+        OutboundMessage filtered = subscription.apply( OutboundMessage.of( "logOutput", LINES ) );
+        // Lines without a level (the stack trace) are kept
+        Assertions.assertEquals( LINES.subList( 2, 5 ), filtered.getLines() );
+        Assertions.assertEquals( "logOutput", filtered.getTopic() );
+    }
+
+
+    @Test
+    public void filtersByExpression() {
+        Subscription subscription = Subscription.ALL.withFilter( null, "[Cc]atalog" );
+        OutboundMessage filtered = subscription.apply( OutboundMessage.of( "logOutput", LINES ) );
+        Assertions.assertEquals( Arrays.asList( LINES.get( 0 ), LINES.get( 4 ) ), filtered.getLines() );
+    }
+
+
+    @Test
+    public void filtersByLevelAndExpression() {
+        Subscription subscription = Subscription.ALL.withFilter( Level.INFO, "[Cc]atalog" );
+        OutboundMessage filtered = subscription.apply( OutboundMessage.of( "logOutput", LINES ) );
+        Assertions.assertEquals( Collections.singletonList( LINES.get( 4 ) ), filtered.getLines() );
+    }
+
+
+    @Test
+    public void keepsMessageIfAllLinesMatch() {
+        OutboundMessage message = OutboundMessage.of( "logOutput", LINES.subList( 2, 5 ) );
+        Assertions.assertSame( message, Subscription.ALL.withFilter( Level.WARN, "" ).apply( message ) );
+    }
+
+
+    @Test
+    public void dropsMessageIfNoLineMatches() {
+        Subscription subscription = Subscription.ALL.withFilter( null, "does not occur" );
+        Assertions.assertNull( subscription.apply( OutboundMessage.of( "logOutput", LINES ) ) );
+    }
+
+
+    @Test
+    public void filtersOnlyLines() {
+        OutboundMessage status = OutboundMessage.of( "status", "running" );
+        Assertions.assertSame( status, Subscription.ALL.withFilter( Level.ERROR, "does not occur" ).apply( status ) );
+    }
+
+
+    @Test
+    public void filterIsKeptWhenChangingTopics() {
+        Subscription subscription = Subscription.ALL.withFilter( null, "does not occur" ).withTopics( Collections.singleton( "logOutput" ) );
+        Assertions.assertNull( subscription.apply( OutboundMessage.of( "logOutput", LINES ) ) );
+    }
+
+}